@@ -0,0 +1,51 @@
+package com.zolotarev.tms;
+
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+// The whole application on H2 instead of PostgreSQL, by default without a web server.
+// The Flyway scripts use PostgreSQL syntax, so the schema is created by Hibernate here.
+// Properties are passed as command line arguments, the only source that overrides application.yml.
+public final class InMemoryApplication {
+    private static final String[] PROPERTIES = {
+            "spring.datasource.url=jdbc:h2:mem:tms;DB_CLOSE_DELAY=-1",
+            "spring.datasource.username=sa",
+            "spring.datasource.password=",
+            "spring.datasource.driver-class-name=org.h2.Driver",
+            "spring.jpa.database=h2",
+            "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+            "spring.jpa.hibernate.ddl-auto=create-drop",
+            "spring.jpa.show-sql=false",
+            "spring.jpa.properties.hibernate.search.backend.directory.type=local-heap",
+            "spring.flyway.enabled=false",
+            "logging.level.root=WARN"
+    };
+
+    private InMemoryApplication() {
+    }
+
+    public static ConfigurableApplicationContext start(String... properties) {
+        return start(WebApplicationType.NONE, properties);
+    }
+
+    // with Tomcat on a random port, see local.server.port
+    public static ConfigurableApplicationContext startServer(String... properties) {
+        return start(WebApplicationType.SERVLET, Stream.concat(Stream.of("server.port=0"), Arrays.stream(properties))
+                .toArray(String[]::new));
+    }
+
+    private static ConfigurableApplicationContext start(WebApplicationType type, String... properties) {
+        List<String> args = new ArrayList<>();
+        Stream.concat(Arrays.stream(PROPERTIES), Arrays.stream(properties))
+                .forEach(property -> args.add("--" + property));
+        return new SpringApplicationBuilder(TmsApplication.class)
+                .web(type)
+                .run(args.toArray(String[]::new));
+    }
+}
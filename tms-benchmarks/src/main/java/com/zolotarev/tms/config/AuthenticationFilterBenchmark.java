@@ -0,0 +1,92 @@
+package com.zolotarev.tms.config;
+
+import com.zolotarev.tms.InMemoryApplication;
+import com.zolotarev.tms.entities.User;
+import com.zolotarev.tms.repository.UserRepository;
+import com.zolotarev.tms.service.JwtService;
+import jakarta.servlet.ServletException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// What every authenticated request pays before reaching a controller: token verification,
+// the token version lookup and the security context. tokenVersionMiss evicts the cached
+// version first, so the lookup goes to the (in-memory) database as after a user update.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AuthenticationFilterBenchmark {
+    private ConfigurableApplicationContext context;
+    private JwtAuthenticationFilter filter;
+    private Cache tokenVersions;
+    private Long userId;
+    private String bearer;
+
+    @Setup
+    public void setUp() throws ServletException, IOException {
+        context = InMemoryApplication.start();
+        filter = context.getBean(JwtAuthenticationFilter.class);
+        tokenVersions = context.getBean(CacheManager.class).getCache(CacheConfig.TOKEN_VERSIONS);
+
+        User user = User.builder().firstName("Ivan").lastName("Ivanov").email("iv@ya.ru")
+                .password(context.getBean(PasswordEncoder.class).encode("111"))
+                .role(User.Role.USER).build();
+        user = context.getBean(UserRepository.class).save(user);
+        userId = user.getId();
+        bearer = "Bearer " + context.getBean(JwtService.class).generateToken(user);
+
+        if (cachedTokenVersion() == null) {
+            throw new IllegalStateException("the token was not accepted by the filter");
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Authentication cachedTokenVersion() throws ServletException, IOException {
+        return authenticate();
+    }
+
+    @Benchmark
+    public Authentication tokenVersionMiss() throws ServletException, IOException {
+        tokenVersions.evict(userId);
+        return authenticate();
+    }
+
+    private Authentication authenticate() throws ServletException, IOException {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/tasks");
+        request.addHeader("Authorization", bearer);
+        try {
+            filter.doFilter(request, new MockHttpServletResponse(), new MockFilterChain());
+            return SecurityContextHolder.getContext().getAuthentication();
+        } finally {
+            SecurityContextHolder.clearContext();
+        }
+    }
+}
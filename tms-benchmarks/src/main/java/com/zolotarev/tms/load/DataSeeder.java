@@ -0,0 +1,81 @@
+package com.zolotarev.tms.load;
+
+import com.zolotarev.tms.entities.Task;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// Fills the tables with plain JDBC batches, millions of rows through JPA would take longer than the test.
+// Ids are 1..n, users are load<id>@ya.ru with one password, comments are spread evenly over the tasks.
+// Seeded rows are not in the search index, /tasks/search is not part of the workload.
+public class DataSeeder {
+    private static final int BATCH = 5000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final String passwordHash;
+    // fixed seed, the same options give the same dataset
+    private final Random random = new Random(42);
+
+    public DataSeeder(JdbcTemplate jdbcTemplate, String passwordHash) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.passwordHash = passwordHash;
+    }
+
+    public static String email(long userId) {
+        return "load" + userId + "@ya.ru";
+    }
+
+    public void seed(int users, int tasks, int comments) {
+        long start = System.nanoTime();
+        insert("INSERT INTO user_table (id, first_name, last_name, email, password, role, token_version) "
+                + "VALUES (?, ?, ?, ?, ?, ?, 0)", users, id -> new Object[]{
+                id, "First" + id, "Last" + id, email(id), passwordHash, "USER"});
+
+        Task.TaskStatus[] statuses = Task.TaskStatus.values();
+        insert("INSERT INTO tasks (id, title, description, status, priority, author_id, performer_id, comment_count) "
+                + "VALUES (?, ?, ?, ?, ?, ?, ?, ?)", tasks, id -> new Object[]{
+                id,
+                (id % 1000 == 0 ? "Fix " : "Task ") + id,
+                "Seeded task " + id,
+                statuses[(int) (id % statuses.length)].name(),
+                id % 50 == 0 ? "HIGH" : (random.nextBoolean() ? "MIDDLE" : "LOW"),
+                randomUser(users),
+                id % 4 == 0 ? null : randomUser(users),
+                comments / tasks + (id <= comments % tasks ? 1 : 0)});
+
+        insert("INSERT INTO comments (id, task_id, author_id, text) VALUES (?, ?, ?, ?)", comments, id -> new Object[]{
+                id, (id - 1) % tasks + 1, randomUser(users), "Seeded comment " + id});
+
+        // pooled sequences hand out (value - 49 .. value], the next block has to start after the seeded ids
+        restart("user_table_seq", users);
+        restart("tasks_seq", tasks);
+        restart("comments_seq", comments);
+        System.out.printf("Seeded %d users, %d tasks, %d comments in %d s%n",
+                users, tasks, comments, (System.nanoTime() - start) / 1_000_000_000L);
+    }
+
+    private void insert(String sql, int count, RowFactory rows) {
+        List<Object[]> batch = new ArrayList<>(BATCH);
+        for (long id = 1; id <= count; id++) {
+            batch.add(rows.row(id));
+            if (batch.size() == BATCH || id == count) {
+                jdbcTemplate.batchUpdate(sql, batch);
+                batch.clear();
+            }
+        }
+    }
+
+    private void restart(String sequence, int maxId) {
+        jdbcTemplate.execute("ALTER SEQUENCE " + sequence + " RESTART WITH " + (maxId + 50));
+    }
+
+    private long randomUser(int users) {
+        return 1 + random.nextInt(users);
+    }
+
+    private interface RowFactory {
+        Object[] row(long id);
+    }
+}
@@ -0,0 +1,138 @@
+package com.zolotarev.tms.load;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zolotarev.tms.dto.AuthResponse;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+// One simulated user: logs in as a random seeded user, then sends requests of the mix back to back
+// (or on a fixed schedule when a rate is given) until the end. Only requests started after
+// measureFrom are recorded. Latencies are in microseconds.
+public class LoadClient implements Callable<LoadClient.Result> {
+    private static final long HIGHEST_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+    private final HttpClient http;
+    private final Workload workload;
+    private final String base;
+    private final ObjectMapper objectMapper;
+    private final List<String> names;
+    private final int[] cumulativeWeights;
+    private final Random random;
+    private final long measureFrom;
+    private final long end;
+    // 0 means closed loop
+    private final long intervalNanos;
+
+    public LoadClient(HttpClient http, Workload workload, String base, ObjectMapper objectMapper, Map<String, Integer> mix,
+                      long seed, long measureFrom, long end, long intervalNanos) {
+        this.http = http;
+        this.workload = workload;
+        this.base = base;
+        this.objectMapper = objectMapper;
+        this.names = List.copyOf(mix.keySet());
+        this.cumulativeWeights = new int[names.size()];
+        int sum = 0;
+        for (int i = 0; i < names.size(); i++) {
+            sum += mix.get(names.get(i));
+            cumulativeWeights[i] = sum;
+        }
+        this.random = new Random(seed);
+        this.measureFrom = measureFrom;
+        this.end = end;
+        this.intervalNanos = intervalNanos;
+    }
+
+    @Override
+    public Result call() throws Exception {
+        Result result = new Result();
+        String token = obtainToken();
+        // the first request of a paced client is spread over one interval, not sent by all at once
+        long scheduled = System.nanoTime() + (intervalNanos > 0 ? (long) (random.nextDouble() * intervalNanos) : 0);
+        while (true) {
+            if (intervalNanos > 0) {
+                LockSupport.parkNanos(scheduled - System.nanoTime());
+            }
+            // latency is counted from the scheduled start, a late send is part of the latency
+            long start = intervalNanos > 0 ? scheduled : System.nanoTime();
+            if (start >= end) {
+                return result;
+            }
+            String name = next();
+            int status = send(workload.request(name, base, token, random));
+            if (start >= measureFrom) {
+                result.record(name, (System.nanoTime() - start) / 1000, status);
+            }
+            scheduled += intervalNanos;
+        }
+    }
+
+    // JWT of the client, obtained through /users/login like a real client does
+    private String obtainToken() throws IOException, InterruptedException {
+        HttpRequest login = workload.login(base, workload.randomUser(random));
+        HttpResponse<String> response = http.send(login, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() >= 400) {
+            throw new IllegalStateException("login failed: " + response.statusCode() + " " + response.body());
+        }
+        return objectMapper.readValue(response.body(), AuthResponse.class).getToken();
+    }
+
+    private String next() {
+        int pick = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        for (int i = 0; i < cumulativeWeights.length; i++) {
+            if (pick < cumulativeWeights[i]) {
+                return names.get(i);
+            }
+        }
+        throw new IllegalStateException();
+    }
+
+    // -1 when the request failed without a response
+    private int send(HttpRequest request) {
+        try {
+            return http.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+        } catch (IOException e) {
+            return -1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return -1;
+        }
+    }
+
+    public static class Result {
+        private final Map<String, Histogram> latencies = new TreeMap<>();
+        private final Map<String, Long> errors = new TreeMap<>();
+
+        void record(String name, long micros, int status) {
+            latencies.computeIfAbsent(name, n -> new Histogram(HIGHEST_MICROS, 3))
+                    .recordValue(Math.min(micros, HIGHEST_MICROS));
+            if (status < 0 || status >= 400) {
+                errors.merge(name, 1L, Long::sum);
+            }
+        }
+
+        void merge(Result other) {
+            other.latencies.forEach((name, histogram) ->
+                    latencies.computeIfAbsent(name, n -> new Histogram(HIGHEST_MICROS, 3)).add(histogram));
+            other.errors.forEach((name, count) -> errors.merge(name, count, Long::sum));
+        }
+
+        public Map<String, Histogram> getLatencies() {
+            return latencies;
+        }
+
+        public long getErrors(String name) {
+            return errors.getOrDefault(name, 0L);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.zolotarev.tms.load;
+
+import org.springframework.boot.convert.DurationStyle;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Command line of LoadTest, every option is --name=value.
+// --spring.*, --server.* and --application.* options are passed on to the application.
+public record LoadSettings(int users,
+                           int tasks,
+                           int comments,
+                           int clients,
+                           Duration warmup,
+                           Duration duration,
+                           double rate,
+                           Map<String, Integer> mix,
+                           Path out,
+                           List<String> applicationProperties) {
+    public static final String DEFAULT_MIX = "login:2,task:15,tasks-by-author:15,tasks-by-performer:10,"
+            + "tasks-filter:10,comments-by-task:15,comments-by-author:5,user:10,create-task:3,create-comment:5";
+
+    public static LoadSettings parse(String... args) {
+        Map<String, String> options = new LinkedHashMap<>();
+        List<String> applicationProperties = new ArrayList<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (!arg.startsWith("--") || eq < 0) {
+                throw new IllegalArgumentException("Expected --name=value, got " + arg);
+            }
+            String name = arg.substring(2, eq);
+            if (name.startsWith("spring.") || name.startsWith("server.") || name.startsWith("application.")) {
+                applicationProperties.add(arg.substring(2));
+            } else {
+                options.put(name, arg.substring(eq + 1));
+            }
+        }
+        LoadSettings settings = new LoadSettings(
+                Integer.parseInt(take(options, "users", "1000")),
+                Integer.parseInt(take(options, "tasks", "1000000")),
+                Integer.parseInt(take(options, "comments", "1000000")),
+                Integer.parseInt(take(options, "clients", "64")),
+                DurationStyle.detectAndParse(take(options, "warmup", "15s")),
+                DurationStyle.detectAndParse(take(options, "duration", "60s")),
+                Double.parseDouble(take(options, "rate", "0")),
+                parseMix(take(options, "mix", DEFAULT_MIX)),
+                Path.of(take(options, "out", "target/load")),
+                applicationProperties);
+        if (!options.isEmpty()) {
+            throw new IllegalArgumentException("Unknown options " + options.keySet());
+        }
+        if (settings.users < 1 || settings.tasks < 1 || settings.comments < 0 || settings.clients < 1) {
+            throw new IllegalArgumentException("users, tasks and clients must be positive");
+        }
+        return settings;
+    }
+
+    private static String take(Map<String, String> options, String name, String defaultValue) {
+        String value = options.remove(name);
+        return value != null ? value : defaultValue;
+    }
+
+    // name:weight,... e.g. login:1,task:10
+    private static Map<String, Integer> parseMix(String mix) {
+        Map<String, Integer> weights = new LinkedHashMap<>();
+        for (String entry : mix.split(",")) {
+            String[] parts = entry.trim().split(":");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Expected name:weight in the mix, got " + entry);
+            }
+            int weight = Integer.parseInt(parts[1]);
+            if (weight > 0) {
+                weights.put(parts[0], weight);
+            }
+        }
+        if (weights.isEmpty()) {
+            throw new IllegalArgumentException("The mix is empty");
+        }
+        return weights;
+    }
+}
@@ -0,0 +1,119 @@
+package com.zolotarev.tms.load;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zolotarev.tms.InMemoryApplication;
+import org.HdrHistogram.Histogram;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.http.HttpClient;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Seeds the in-memory database, starts the application on a random port and drives it over HTTP.
+// Prints throughput and latency percentiles per request type and writes the full HDR distribution
+// of each one to <out>/<name>.hgrm (plot with https://hdrhistogram.github.io/HdrHistogram/plotFiles.html).
+//
+// Options (--name=value):
+//   users=1000 tasks=1000000 comments=1000000    dataset
+//   clients=64                                   concurrent users, each with its own JWT
+//   warmup=15s duration=60s                      nothing is recorded during the warmup
+//   rate=0                                       total requests/s, 0 sends back to back (closed loop)
+//   mix=login:2,task:15,...                      weights per request type, see Workload
+//   out=target/load
+//   spring.*, server.*, application.*           passed on to the application
+// Run with: mvn -B verify -DskipTests -Dload.skip=false [-Dload.args="--tasks=2000000 --clients=200"]
+public final class LoadTest {
+    private LoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadSettings settings = LoadSettings.parse(args);
+        ObjectMapper objectMapper = new ObjectMapper();
+        Workload workload = new Workload(settings, objectMapper);
+        try (ConfigurableApplicationContext context = InMemoryApplication.startServer(
+                settings.applicationProperties().toArray(String[]::new))) {
+            String passwordHash = context.getBean(PasswordEncoder.class).encode(Workload.PASSWORD);
+            new DataSeeder(context.getBean(JdbcTemplate.class), passwordHash)
+                    .seed(settings.users(), settings.tasks(), settings.comments());
+
+            String base = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+            LoadClient.Result result = run(workload, base, settings, objectMapper);
+            report(result, settings);
+        }
+    }
+
+    private static LoadClient.Result run(Workload workload, String base, LoadSettings settings,
+                                         ObjectMapper objectMapper) throws Exception {
+        HttpClient http = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        long measureFrom = System.nanoTime() + settings.warmup().toNanos();
+        long end = measureFrom + settings.duration().toNanos();
+        long intervalNanos = settings.rate() > 0 ? (long) (settings.clients() * 1e9 / settings.rate()) : 0;
+        System.out.printf("%d clients, %s warmup, %s measured, %s%n", settings.clients(), settings.warmup(),
+                settings.duration(), intervalNanos > 0 ? settings.rate() + " req/s" : "closed loop");
+
+        ExecutorService clients = Executors.newFixedThreadPool(settings.clients());
+        try {
+            List<Future<LoadClient.Result>> futures = new ArrayList<>();
+            for (int c = 0; c < settings.clients(); c++) {
+                futures.add(clients.submit(new LoadClient(http, workload, base, objectMapper, settings.mix(),
+                        c, measureFrom, end, intervalNanos)));
+            }
+            LoadClient.Result total = new LoadClient.Result();
+            for (Future<LoadClient.Result> future : futures) {
+                total.merge(future.get());
+            }
+            return total;
+        } finally {
+            clients.shutdownNow();
+        }
+    }
+
+    private static void report(LoadClient.Result result, LoadSettings settings) throws IOException {
+        double seconds = settings.duration().toNanos() / 1e9;
+        Histogram all = new Histogram(3);
+        long allErrors = 0;
+        Files.createDirectories(settings.out());
+
+        System.out.printf("%-20s %9s %7s %9s %9s %9s %9s %9s %9s%n",
+                "request", "count", "errors", "req/s", "p50 ms", "p95 ms", "p99 ms", "p99.9 ms", "max ms");
+        for (Map.Entry<String, Histogram> entry : result.getLatencies().entrySet()) {
+            String name = entry.getKey();
+            Histogram histogram = entry.getValue();
+            long errors = result.getErrors(name);
+            print(name, histogram, errors, seconds);
+            write(settings, name, histogram);
+            all.add(histogram);
+            allErrors += errors;
+        }
+        print("all", all, allErrors, seconds);
+        write(settings, "all", all);
+        System.out.println("Distributions written to " + settings.out().toAbsolutePath());
+    }
+
+    private static void print(String name, Histogram histogram, long errors, double seconds) {
+        System.out.printf("%-20s %9d %7d %9.1f %9.2f %9.2f %9.2f %9.2f %9.2f%n", name,
+                histogram.getTotalCount(), errors, histogram.getTotalCount() / seconds,
+                millis(histogram, 50), millis(histogram, 95), millis(histogram, 99), millis(histogram, 99.9),
+                histogram.getMaxValue() / 1000.0);
+    }
+
+    private static double millis(Histogram histogram, double percentile) {
+        return histogram.getValueAtPercentile(percentile) / 1000.0;
+    }
+
+    private static void write(LoadSettings settings, String name, Histogram histogram) throws IOException {
+        try (PrintStream out = new PrintStream(Files.newOutputStream(settings.out().resolve(name + ".hgrm")))) {
+            // recorded in microseconds, the file is in milliseconds
+            histogram.outputPercentileDistribution(out, 1000.0);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.zolotarev.tms.load;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zolotarev.tms.dto.AuthRequest;
+import com.zolotarev.tms.dto.CommentRequest;
+import com.zolotarev.tms.dto.TaskRequest;
+import com.zolotarev.tms.entities.Task;
+
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+// Requests of the mix by name. Ids are drawn uniformly from the seeded ranges,
+// listings use the keyset (after=) variant with 20 rows like the clients do.
+public class Workload {
+    public static final String PASSWORD = "password";
+    private static final int LIMIT = 20;
+
+    private final int users;
+    private final int tasks;
+    private final ObjectMapper objectMapper;
+    private final Map<String, Operation> operations = new LinkedHashMap<>();
+
+    public Workload(LoadSettings settings, ObjectMapper objectMapper) {
+        this.users = settings.users();
+        this.tasks = settings.tasks();
+        this.objectMapper = objectMapper;
+
+        operations.put("login", (base, token, random) -> login(base, randomUser(random)));
+        operations.put("task", (base, token, random) -> get(base, "/tasks/" + randomTask(random), token));
+        operations.put("tasks-all", (base, token, random) ->
+                get(base, "/tasks/all?after=&limit=" + LIMIT, token));
+        operations.put("tasks-by-author", (base, token, random) ->
+                get(base, "/tasks/author/" + randomUser(random) + "?after=&limit=" + LIMIT, token));
+        operations.put("tasks-by-performer", (base, token, random) ->
+                get(base, "/tasks/performer/" + randomUser(random) + "?after=&limit=" + LIMIT, token));
+        operations.put("tasks-filter", (base, token, random) -> get(base, "/tasks/filter?status="
+                + randomStatus(random) + "&priority=" + randomPriority(random) + "&limit=" + LIMIT, token));
+        operations.put("comments-by-task", (base, token, random) ->
+                get(base, "/comments/by-task/" + randomTask(random) + "?after=&limit=" + LIMIT, token));
+        operations.put("comments-by-author", (base, token, random) ->
+                get(base, "/comments/by-author/" + randomUser(random) + "?after=&limit=" + LIMIT, token));
+        operations.put("user", (base, token, random) -> get(base, "/users/" + randomUser(random), token));
+        operations.put("create-task", (base, token, random) -> {
+            TaskRequest task = new TaskRequest();
+            task.setTitle("Load task");
+            task.setDescription("Created by the load test");
+            task.setStatus(randomStatus(random));
+            task.setPriority(randomPriority(random));
+            task.setPerformerId(randomUser(random));
+            return post(base, "/tasks/create", task, token);
+        });
+        operations.put("create-comment", (base, token, random) -> {
+            CommentRequest comment = new CommentRequest();
+            comment.setTaskId(randomTask(random));
+            comment.setText("Load comment");
+            return post(base, "/comments/create", comment, token);
+        });
+
+        for (String name : settings.mix().keySet()) {
+            if (!operations.containsKey(name)) {
+                throw new IllegalArgumentException("Unknown request type " + name
+                        + ", known are " + operations.keySet());
+            }
+        }
+    }
+
+    public HttpRequest request(String name, String base, String token, Random random) {
+        return operations.get(name).request(base, token, random);
+    }
+
+    public HttpRequest login(String base, long userId) {
+        return post(base, "/users/login", new AuthRequest(DataSeeder.email(userId), PASSWORD), null);
+    }
+
+    public long randomUser(Random random) {
+        return 1 + random.nextInt(users);
+    }
+
+    private long randomTask(Random random) {
+        return 1 + random.nextInt(tasks);
+    }
+
+    private static Task.TaskStatus randomStatus(Random random) {
+        Task.TaskStatus[] values = Task.TaskStatus.values();
+        return values[random.nextInt(values.length)];
+    }
+
+    private static Task.TaskPriority randomPriority(Random random) {
+        Task.TaskPriority[] values = Task.TaskPriority.values();
+        return values[random.nextInt(values.length)];
+    }
+
+    private HttpRequest get(String base, String path, String token) {
+        return authorized(HttpRequest.newBuilder(URI.create(base + path)).GET(), token);
+    }
+
+    private HttpRequest post(String base, String path, Object body, String token) {
+        try {
+            return authorized(HttpRequest.newBuilder(URI.create(base + path))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(body))), token);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static HttpRequest authorized(HttpRequest.Builder builder, String token) {
+        if (token != null) {
+            builder.header("Authorization", "Bearer " + token);
+        }
+        return builder.build();
+    }
+
+    private interface Operation {
+        HttpRequest request(String base, String token, Random random);
+    }
+}
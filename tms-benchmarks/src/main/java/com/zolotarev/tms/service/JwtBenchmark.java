@@ -0,0 +1,74 @@
+package com.zolotarev.tms.service;
+
+import com.zolotarev.tms.InMemoryApplication;
+import com.zolotarev.tms.dto.UserPrincipal;
+import com.zolotarev.tms.entities.User;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.concurrent.TimeUnit;
+
+// JwtService as configured in application.yml. With tokenCacheSize=0 every call verifies
+// the signature, otherwise the same token is answered from the verified-token cache.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JwtBenchmark {
+    @Param({"10000", "0"})
+    public int tokenCacheSize;
+
+    private ConfigurableApplicationContext context;
+    private JwtService jwtService;
+    private User user;
+    private String token;
+    private String bearer;
+
+    @Setup
+    public void setUp() {
+        context = InMemoryApplication.start("application.jwt.cache-size=" + tokenCacheSize);
+        jwtService = context.getBean(JwtService.class);
+        user = User.builder().id(1L).firstName("Ivan").lastName("Ivanov").email("iv@ya.ru")
+                .role(User.Role.USER).build();
+        token = jwtService.generateToken(user);
+        bearer = "Bearer " + token;
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public String generateToken() {
+        return jwtService.generateToken(user);
+    }
+
+    @Benchmark
+    public boolean validateToken() {
+        return jwtService.validateToken(bearer);
+    }
+
+    @Benchmark
+    public String extractUserEmail() {
+        return jwtService.extractUserEmail(token);
+    }
+
+    @Benchmark
+    public UserPrincipal extractPrincipal() {
+        return jwtService.extractPrincipal(token);
+    }
+}
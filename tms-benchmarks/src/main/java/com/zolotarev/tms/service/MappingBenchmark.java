@@ -0,0 +1,80 @@
+package com.zolotarev.tms.service;
+
+import com.zolotarev.tms.dto.CommentResponse;
+import com.zolotarev.tms.dto.TaskResponse;
+import com.zolotarev.tms.dto.TaskRow;
+import com.zolotarev.tms.entities.Comment;
+import com.zolotarev.tms.entities.Task;
+import com.zolotarev.tms.entities.User;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// Entity/row -> response mapping done for every element of every listing.
+// Relations are plain objects, i.e. the initialized (fetched) branch of the mappers.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class MappingBenchmark {
+    private TaskService taskService;
+    private CommentService commentService;
+    private Task task;
+    private TaskRow row;
+    private Comment comment;
+
+    @Setup
+    public void setUp() {
+        // the mappers touch no dependencies
+        taskService = new TaskService();
+        commentService = new CommentService(null, null, null, null, null, null);
+
+        User author = User.builder().id(1L).firstName("Ivan").lastName("Ivanov").email("iv@ya.ru")
+                .role(User.Role.USER).build();
+        User performer = User.builder().id(2L).firstName("Petr").lastName("Petrov").email("pt@ya.ru")
+                .role(User.Role.USER).build();
+        task = new Task();
+        task.setId(10L);
+        task.setTitle("Fix the login page");
+        task.setDescription("Password field loses focus");
+        task.setStatus(Task.TaskStatus.IN_PROGRESS);
+        task.setPriority(Task.TaskPriority.HIGH);
+        task.setAuthor(author);
+        task.setAuthorId(author.getId());
+        task.setPerformer(performer);
+        task.setPerformerId(performer.getId());
+        task.setCommentCount(3);
+
+        row = new TaskRow(10L, "Fix the login page", "Password field loses focus",
+                Task.TaskStatus.IN_PROGRESS, Task.TaskPriority.HIGH,
+                1L, "Ivan", "Ivanov", 2L, "Petr", "Petrov", 3);
+
+        comment = new Comment(100L, task, task.getId(), author, author.getId(), "Reproduced in Firefox", 0L);
+    }
+
+    @Benchmark
+    public TaskResponse taskEntity() {
+        return taskService.toResponse(task);
+    }
+
+    @Benchmark
+    public TaskResponse taskRow() {
+        return taskService.toResponse(row);
+    }
+
+    @Benchmark
+    public CommentResponse commentEntity() {
+        return commentService.toResponse(comment);
+    }
+}
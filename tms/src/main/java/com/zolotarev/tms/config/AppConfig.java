@@ -3,11 +3,15 @@ package com.zolotarev.tms.config;
 import com.zolotarev.tms.repository.UserRepository;
 import com.zolotarev.tms.service.CustomUserDetailsService;
 import com.zolotarev.tms.service.UserService;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.AuthenticationProvider;
 import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
@@ -19,9 +23,14 @@ import org.springframework.security.crypto.password.PasswordEncoder;
 @Configuration
 @RequiredArgsConstructor
 @EnableJpaRepositories(basePackages = "com.zolotarev.tms.repository")
+@EnableScheduling
 public class AppConfig {
     @Autowired
     private final UserRepository userRepository;
+    @Autowired
+    private final MeterRegistry meterRegistry;
+    @Autowired
+    private final StatementCounter statementCounter;
 
     @Bean
     public UserDetailsService userDetailsService() {
@@ -30,7 +39,7 @@ public class AppConfig {
 
     @Bean
     public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+        return new TimedPasswordEncoder(new BCryptPasswordEncoder(), meterRegistry);
     }
 
     @Bean
@@ -41,6 +50,63 @@ public class AppConfig {
         return provider;
     }
 
+    // loads the sections of UserResponse concurrently; bounded, a full queue degrades the response
+    @Bean
+    public ThreadPoolTaskExecutor profileExecutor(@Value("${application.profile.threads:8}") int threads,
+                                                  @Value("${application.profile.queue:100}") int queue) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(queue);
+        executor.setThreadNamePrefix("profile-");
+        // sections are part of the request, their statements count against its budget
+        executor.setTaskDecorator(statementCounter::propagate);
+        return executor;
+    }
+
+    // reindexes tasks changed by bulk statements once they are committed, see SearchService
+    @Bean
+    public ThreadPoolTaskExecutor searchExecutor(@Value("${application.search.queue:10000}") int queue) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        executor.setQueueCapacity(queue);
+        executor.setThreadNamePrefix("search-");
+        return executor;
+    }
+
+    // hands committed task changes over to the /tasks/stream subscribers in commit order, see TaskChangeFeed;
+    // a full queue means dispatches are pending already, each takes all the events published so far
+    @Bean
+    public ThreadPoolTaskExecutor feedExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        executor.setQueueCapacity(100);
+        executor.setThreadNamePrefix("feed-");
+        return executor;
+    }
+
+    // writes to the /tasks/stream connections; a subscriber is queued at most once at a time
+    @Bean
+    public ThreadPoolTaskExecutor streamExecutor(@Value("${application.stream.threads:4}") int threads) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setThreadNamePrefix("stream-");
+        return executor;
+    }
+
+    // runs the user deletion jobs one at a time, see UserDeletionService
+    @Bean
+    public ThreadPoolTaskExecutor userDeletionExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        executor.setThreadNamePrefix("user-deletion-");
+        return executor;
+    }
+
     @Bean
     public AuthenticationManager authenticationManager(AuthenticationConfiguration configuration) throws Exception {
         return configuration.getAuthenticationManager();
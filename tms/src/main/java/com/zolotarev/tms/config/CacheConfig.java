@@ -0,0 +1,45 @@
+package com.zolotarev.tms.config;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+@Configuration
+@EnableCaching
+@RequiredArgsConstructor
+@EnableConfigurationProperties(CacheProperties.class)
+public class CacheConfig {
+    public static final String USERS = "users";
+    public static final String USER_RESP = "user_resp";
+    public static final String TASKS = "tasks";
+    public static final String TOKEN_VERSIONS = "token_versions";
+
+    @Autowired
+    private final CacheProperties cacheProperties;
+
+    @Bean
+    public CacheManager cacheManager() {
+        CaffeineCacheManager manager = new CaffeineCacheManager();
+        // stats are always recorded, they are exposed on /caches/stats
+        manager.setCaffeine(Caffeine.from(cacheProperties.getDefaultSpec()).recordStats());
+        // empty Optional from repositories must not be cached as "no such user"
+        manager.setAllowNullValues(false);
+        Set<String> names = new LinkedHashSet<>(List.of(USERS, USER_RESP, TASKS, TOKEN_VERSIONS));
+        names.addAll(cacheProperties.getSpecs().keySet());
+        for (String name : names) {
+            String spec = cacheProperties.getSpecs().getOrDefault(name, cacheProperties.getDefaultSpec());
+            manager.registerCustomCache(name, Caffeine.from(spec).recordStats().build());
+        }
+        return manager;
+    }
+}
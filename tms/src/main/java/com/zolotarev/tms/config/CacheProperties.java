@@ -0,0 +1,16 @@
+package com.zolotarev.tms.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@Data
+@ConfigurationProperties(prefix = "application.cache")
+public class CacheProperties {
+    // Caffeine spec applied to caches that have no own entry in specs
+    private String defaultSpec = "maximumSize=1000,expireAfterWrite=10m";
+    // cache name -> Caffeine spec, e.g. maximumSize=10000,expireAfterWrite=5m
+    private Map<String, String> specs = new LinkedHashMap<>();
+}
@@ -0,0 +1,76 @@
+package com.zolotarev.tms.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import net.ttddyy.dsproxy.support.ProxyDataSourceBuilder;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.flyway.FlywayDataSource;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// spring.datasource (bound by Boot) is the primary, application.datasource.replicas are read-only pools.
+// Hibernate releases the connection after every transaction
+// (hibernate.connection.handling_mode), so each transaction is routed on its own even when
+// open-in-view keeps the session for the whole request.
+@Configuration
+@RequiredArgsConstructor
+@EnableConfigurationProperties(ReplicaProperties.class)
+public class DataSourceConfig {
+    @Autowired
+    private final ReplicaProperties replicaProperties;
+
+    // migrations always run on the primary pool directly
+    @Bean
+    @FlywayDataSource
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName(RoutingDataSource.PRIMARY);
+        return dataSource;
+    }
+
+    @Bean
+    public RoutingDataSource routingDataSource(HikariDataSource primaryDataSource, DataSourceProperties properties,
+                                               ObjectProvider<MeterRegistry> meterRegistry) {
+        Map<String, DataSource> replicas = new LinkedHashMap<>();
+        List<ReplicaProperties.Replica> configured = replicaProperties.getReplicas();
+        for (int i = 0; i < configured.size(); i++) {
+            ReplicaProperties.Replica replica = configured.get(i);
+            HikariDataSource dataSource = new HikariDataSource();
+            dataSource.setPoolName("replica-" + (i + 1));
+            dataSource.setJdbcUrl(replica.getUrl());
+            dataSource.setDriverClassName(properties.determineDriverClassName());
+            dataSource.setUsername(replica.getUsername() != null ? replica.getUsername() : properties.determineUsername());
+            dataSource.setPassword(replica.getPassword() != null ? replica.getPassword() : properties.determinePassword());
+            dataSource.setMaximumPoolSize(replica.getMaximumPoolSize());
+            dataSource.setReadOnly(true);
+            // a replica that is down at startup must not stop the application
+            dataSource.setInitializationFailTimeout(-1);
+            // hikaricp.* metrics; Boot binds only pools that are beans, i.e. the primary
+            meterRegistry.ifAvailable(dataSource::setMetricRegistry);
+            replicas.put(dataSource.getPoolName(), dataSource);
+        }
+        return new RoutingDataSource(primaryDataSource, replicas);
+    }
+
+    // statements are counted per request by the proxy, see StatementBudgetFilter
+    @Bean
+    @Primary
+    public DataSource dataSource(RoutingDataSource routingDataSource, StatementCounter statementCounter) {
+        return ProxyDataSourceBuilder.create("tms", new LazyConnectionDataSourceProxy(routingDataSource))
+                .listener(statementCounter)
+                .build();
+    }
+}
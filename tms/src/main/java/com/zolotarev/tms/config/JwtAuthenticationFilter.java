@@ -1,5 +1,7 @@
 package com.zolotarev.tms.config;
 
+import com.zolotarev.tms.dto.UserPrincipal;
+import com.zolotarev.tms.repository.UserRepository;
 import com.zolotarev.tms.service.JwtService;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
@@ -11,11 +13,8 @@ import org.springframework.security.authentication.UsernamePasswordAuthenticatio
 import org.springframework.security.core.context.SecurityContext;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.context.SecurityContextHolderStrategy;
-import org.springframework.security.core.userdetails.UserDetails;
-import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.stereotype.Component;
-import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
@@ -26,7 +25,7 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
     @Autowired
     private final JwtService jwtService;
     @Autowired
-    private final UserDetailsService userDetailsService;
+    private final UserRepository userRepository;
     private final SecurityContextHolderStrategy securityContextHolderStrategy = SecurityContextHolder.getContextHolderStrategy();
 
     @Override
@@ -37,20 +36,20 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
             return;
         }
         String token = authHeader.substring(7);
-        String email = null;
+        UserPrincipal principal = null;
 
         try {
-            email = jwtService.extractUserEmail(token);
+            principal = jwtService.extractPrincipal(token);
         } catch (Exception e) {
             request.setAttribute("jwt_exception", e.getMessage());
         }
 
-        if (email != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-            UserDetails userDetails = this.userDetailsService.loadUserByUsername(email);
+        if (principal != null && isCurrentVersion(principal)
+                && SecurityContextHolder.getContext().getAuthentication() == null) {
             UsernamePasswordAuthenticationToken authenticationToken = new UsernamePasswordAuthenticationToken(
-                    userDetails,
+                    principal,
                     null,
-                    userDetails.getAuthorities());
+                    principal.getAuthorities());
             authenticationToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
             SecurityContext context = this.securityContextHolderStrategy.createEmptyContext();
             context.setAuthentication(authenticationToken);
@@ -60,4 +59,10 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         filterChain.doFilter(request, response);
 
     }
+
+    // cached lookup, goes to the database only after update/delete of the user or cache expiry
+    private boolean isCurrentVersion(UserPrincipal principal) {
+        Integer current = userRepository.findTokenVersionById(principal.getId());
+        return current != null && current == principal.getTokenVersion();
+    }
 }
@@ -0,0 +1,77 @@
+package com.zolotarev.tms.config;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+// In the virtual-thread mode a carrier thread stays pinned while a virtual thread blocks inside
+// a synchronized block or a native frame, which quietly brings back the pool size limit.
+// The JDK reports such blocks as jdk.VirtualThreadPinned JFR events; they are logged here
+// with the frames that held the monitor. -Djdk.tracePinnedThreads=full prints them to stdout too.
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnThreading(Threading.VIRTUAL)
+public class PinningMonitor {
+    private static final String EVENT = "jdk.VirtualThreadPinned";
+    private static final int FRAMES = 12;
+
+    @Autowired
+    private final MeterRegistry meterRegistry;
+
+    @Value("${application.virtual-threads.pinning-threshold:20ms}")
+    private Duration threshold;
+
+    @Getter
+    private final LongAdder pinnedCount = new LongAdder();
+    private RecordingStream stream;
+
+    @PostConstruct
+    public void start() {
+        stream = new RecordingStream();
+        stream.enable(EVENT).withThreshold(threshold).withStackTrace();
+        stream.onEvent(EVENT, this::report);
+        stream.startAsync();
+        FunctionCounter.builder("tms.virtual_threads.pinned", pinnedCount, LongAdder::sum)
+                .description("Virtual threads pinned longer than the threshold")
+                .register(meterRegistry);
+        log.info("Virtual thread pinning monitor started, threshold {}", threshold);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (stream != null) {
+            stream.close();
+        }
+    }
+
+    private void report(RecordedEvent event) {
+        pinnedCount.increment();
+        String frames = event.getStackTrace() == null ? "no stack trace" : event.getStackTrace().getFrames().stream()
+                .limit(FRAMES)
+                .map(PinningMonitor::format)
+                .collect(Collectors.joining("\n\tat ", "\tat ", ""));
+        log.warn("Virtual thread pinned for {} ms\n{}", event.getDuration().toMillis(), frames);
+    }
+
+    private static String format(RecordedFrame frame) {
+        return frame.getMethod().getType().getName() + "." + frame.getMethod().getName()
+                + ":" + frame.getLineNumber();
+    }
+}
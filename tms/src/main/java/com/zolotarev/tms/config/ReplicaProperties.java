@@ -0,0 +1,27 @@
+package com.zolotarev.tms.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@ConfigurationProperties(prefix = "application.datasource")
+public class ReplicaProperties {
+    // read-only copies of the primary; empty means every transaction goes to the primary
+    private List<Replica> replicas = new ArrayList<>();
+    // how often replicas are probed, ms
+    private long healthCheckInterval = 5000;
+    // Connection.isValid timeout of a probe, seconds
+    private int healthCheckTimeout = 2;
+
+    @Data
+    public static class Replica {
+        private String url;
+        // username and password of spring.datasource are used when not set
+        private String username;
+        private String password;
+        private int maximumPoolSize = 10;
+    }
+}
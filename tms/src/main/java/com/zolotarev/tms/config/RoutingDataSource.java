@@ -0,0 +1,137 @@
+package com.zolotarev.tms.config;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// Sends connections of read-only transactions to the replicas round-robin and everything else
+// to the primary. A replica that fails a probe or a connect is skipped until a probe succeeds
+// again; with no healthy replica reads fall back to the primary.
+// Must sit behind a LazyConnectionDataSourceProxy: the transaction manager asks for a connection
+// before the read-only flag of the transaction is published.
+@Slf4j
+public class RoutingDataSource extends AbstractDataSource {
+    public static final String PRIMARY = "primary";
+
+    @Getter
+    private final Pool primary;
+    @Getter
+    private final List<Pool> replicas = new ArrayList<>();
+    private final AtomicInteger next = new AtomicInteger();
+
+    public RoutingDataSource(DataSource primary, Map<String, DataSource> replicas) {
+        this.primary = new Pool(PRIMARY, primary);
+        replicas.forEach((name, dataSource) -> this.replicas.add(new Pool(name, dataSource)));
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return connect(Pool::connect);
+    }
+
+    // routed like getConnection(), the pool is asked with the given credentials
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return connect(pool -> pool.connect(username, password));
+    }
+
+    private Connection connect(Connector connector) throws SQLException {
+        if (TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            for (Pool replica = nextHealthyReplica(); replica != null; replica = nextHealthyReplica()) {
+                try {
+                    return connector.connect(replica);
+                } catch (SQLException e) {
+                    replica.markDown(e);
+                }
+            }
+        }
+        return connector.connect(primary);
+    }
+
+    // probes every replica, brings back the ones that answer again
+    public void checkHealth(int timeoutSeconds) {
+        for (Pool replica : replicas) {
+            try (Connection connection = replica.getDataSource().getConnection()) {
+                if (connection.isValid(timeoutSeconds)) {
+                    replica.markUp();
+                } else {
+                    replica.markDown(null);
+                }
+            } catch (SQLException e) {
+                replica.markDown(e);
+            }
+        }
+    }
+
+    private Pool nextHealthyReplica() {
+        int size = replicas.size();
+        for (int i = 0; i < size; i++) {
+            Pool replica = replicas.get(Math.floorMod(next.getAndIncrement(), size));
+            if (replica.isHealthy()) {
+                return replica;
+            }
+        }
+        return null;
+    }
+
+    private interface Connector {
+        Connection connect(Pool pool) throws SQLException;
+    }
+
+    @Getter
+    public static class Pool {
+        private final String name;
+        private final DataSource dataSource;
+        private volatile boolean healthy = true;
+        // connections handed out and failed attempts, exposed on /datasources/stats
+        private final LongAdder connections = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+
+        Pool(String name, DataSource dataSource) {
+            this.name = name;
+            this.dataSource = dataSource;
+        }
+
+        Connection connect() throws SQLException {
+            return connect(null, null);
+        }
+
+        // without a username the pool's own credentials are used
+        Connection connect(String username, String password) throws SQLException {
+            try {
+                Connection connection = username == null
+                        ? dataSource.getConnection()
+                        : dataSource.getConnection(username, password);
+                connections.increment();
+                return connection;
+            } catch (SQLException e) {
+                failures.increment();
+                throw e;
+            }
+        }
+
+        void markDown(Exception cause) {
+            if (healthy) {
+                log.warn("Datasource {} is down, reads go to other pools", name, cause);
+            }
+            healthy = false;
+        }
+
+        void markUp() {
+            if (!healthy) {
+                log.info("Datasource {} is back", name);
+            }
+            healthy = true;
+        }
+    }
+}
@@ -1,7 +1,9 @@
 package com.zolotarev.tms.config;
 
+import jakarta.servlet.DispatcherType;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.authentication.AuthenticationProvider;
@@ -12,6 +14,9 @@ import org.springframework.security.config.annotation.web.configurers.AbstractHt
 import org.springframework.security.config.http.SessionCreationPolicy;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
+import org.springframework.security.web.util.matcher.AndRequestMatcher;
+import org.springframework.security.web.util.matcher.AntPathRequestMatcher;
+import org.springframework.security.web.util.matcher.RequestMatcher;
 import org.springframework.web.bind.annotation.PutMapping;
 
 @Configuration
@@ -23,11 +28,20 @@ public class SecurityConfig {
     @Autowired
     private final AuthenticationProvider authenticationProvider;
 
+    @Value("${management.server.port:-1}")
+    private int managementPort;
+
     @Bean
     public SecurityFilterChain securityFilterChain(HttpSecurity http) throws Exception {
+        // metrics show per-endpoint traffic and pool internals: only for scrapers on the management port
+        RequestMatcher actuator = new AntPathRequestMatcher("/actuator/**");
+        RequestMatcher onManagementPort = request -> request.getLocalPort() == managementPort;
         return http.csrf(AbstractHttpConfigurer::disable)
                 .authorizeHttpRequests(authrize ->
-                        authrize.requestMatchers("/users",
+                        // completion of /tasks/stream and exports: the request itself was authorized already,
+                        // the JWT filter doesn't run on the async dispatch
+                        authrize.dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
+                        .requestMatchers("/users",
                                 "/users",
                                 "/users/login",
                                 "/users/register",
@@ -36,7 +50,14 @@ public class SecurityConfig {
                                 "/configuration/ui", "configuration/security",
                                 "/v3/api-docs", "/v3/api-docs/**",
                                 "/webjars/**").permitAll()
+                        .requestMatchers(new AndRequestMatcher(actuator, onManagementPort)).permitAll()
+                        .requestMatchers(actuator).denyAll()
                         .requestMatchers("/users/delete/*").hasRole("ADMIN")
+                        .requestMatchers("/users/deletion-jobs/*").hasRole("ADMIN")
+                        .requestMatchers("/caches/**").hasRole("ADMIN")
+                        .requestMatchers("/datasources/**").hasRole("ADMIN")
+                        .requestMatchers("/tasks/comment-counts/**").hasRole("ADMIN")
+                        .requestMatchers("/tasks/search/reindex").hasRole("ADMIN")
                         .anyRequest().authenticated())
                 .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
                 .authenticationProvider(authenticationProvider)
@@ -0,0 +1,87 @@
+package com.zolotarev.tms.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Statements per request: tms.sql.statements{uri} and a warning with the repeated SQL when a request
+// goes over application.sql-budget.statements. Runs before the security chain, so the token version
+// lookup is counted too. The count is left in the STATEMENTS request attribute for the tests.
+// Bodies streamed after the handler returned (exports) are not counted.
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@Order(Ordered.HIGHEST_PRECEDENCE + 10)
+public class StatementBudgetFilter extends OncePerRequestFilter {
+    public static final String STATEMENTS = StatementBudgetFilter.class.getName() + ".statements";
+    private static final int REPEATED = 5;
+
+    @Autowired
+    private final StatementCounter statementCounter;
+    @Autowired
+    private final MeterRegistry meterRegistry;
+
+    @Value("${application.sql-budget.statements:10}")
+    private int budget;
+
+    // meters by uri template, the set of templates is fixed by the controllers
+    private final Map<String, Meters> meters = new ConcurrentHashMap<>();
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        StatementCounter.Statements statements = statementCounter.start();
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            statementCounter.stop();
+            report(request, statements);
+        }
+    }
+
+    private void report(HttpServletRequest request, StatementCounter.Statements statements) {
+        int count = statements.count();
+        request.setAttribute(STATEMENTS, count);
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        String uri = pattern != null ? pattern.toString() : "UNKNOWN";
+        Meters uriMeters = meters.computeIfAbsent(uri, this::register);
+        uriMeters.statements.record(count);
+        if (count > budget) {
+            uriMeters.overBudget.increment();
+            log.warn("{} {} executed {} SQL statements, budget is {}; repeated: {}",
+                    request.getMethod(), uri, count, budget, statements.repeated(REPEATED));
+        }
+    }
+
+    private Meters register(String uri) {
+        return new Meters(
+                DistributionSummary.builder("tms.sql.statements")
+                        .description("JDBC statements executed per HTTP request")
+                        .tag("uri", uri)
+                        .register(meterRegistry),
+                Counter.builder("tms.sql.over_budget")
+                        .description("HTTP requests that executed more statements than the budget")
+                        .tag("uri", uri)
+                        .register(meterRegistry));
+    }
+
+    private record Meters(DistributionSummary statements, Counter overBudget) {
+    }
+}
@@ -0,0 +1,94 @@
+package com.zolotarev.tms.config;
+
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.listener.QueryExecutionListener;
+import org.springframework.stereotype.Component;
+
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// Counts the JDBC statements executed on behalf of the current HTTP request, see StatementBudgetFilter.
+// A batch is one statement, it is one round trip. Threads working for the request (profile executor)
+// join its count through propagate; statements outside of a request are not counted.
+@Component
+public class StatementCounter implements QueryExecutionListener {
+    private static final int SQL_LENGTH = 300;
+
+    private final ThreadLocal<Statements> current = new ThreadLocal<>();
+
+    public Statements start() {
+        Statements statements = new Statements();
+        current.set(statements);
+        return statements;
+    }
+
+    public void stop() {
+        current.remove();
+    }
+
+    // TaskDecorator of the executors running parts of a request
+    public Runnable propagate(Runnable task) {
+        Statements statements = current.get();
+        if (statements == null) {
+            return task;
+        }
+        return () -> {
+            current.set(statements);
+            try {
+                task.run();
+            } finally {
+                current.remove();
+            }
+        };
+    }
+
+    @Override
+    public void beforeQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+    }
+
+    @Override
+    public void afterQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+        Statements statements = current.get();
+        if (statements == null) {
+            return;
+        }
+        statements.count.increment();
+        // several QueryInfo only for Statement.addBatch, the first one names the batch well enough
+        if (!queryInfoList.isEmpty()) {
+            statements.bySql.computeIfAbsent(queryInfoList.get(0).getQuery(), sql -> new AtomicInteger())
+                    .incrementAndGet();
+        }
+    }
+
+    public static class Statements {
+        private final LongAdder count = new LongAdder();
+        private final Map<String, AtomicInteger> bySql = new ConcurrentHashMap<>();
+
+        public int count() {
+            return count.intValue();
+        }
+
+        // statements executed more than once, the most frequent first: the usual N+1 suspects
+        public Map<String, Integer> repeated(int limit) {
+            Map<String, Integer> repeated = new LinkedHashMap<>();
+            bySql.entrySet().stream()
+                    .filter(e -> e.getValue().get() > 1)
+                    .sorted(Comparator.comparingInt((Map.Entry<String, AtomicInteger> e) -> e.getValue().get())
+                            .reversed())
+                    .limit(limit)
+                    .forEach(e -> repeated.put(abbreviate(e.getKey()), e.getValue().get()));
+            return repeated;
+        }
+
+        private static String abbreviate(String sql) {
+            String oneLine = sql.replaceAll("\\s+", " ").trim();
+            return oneLine.length() <= SQL_LENGTH ? oneLine : oneLine.substring(0, SQL_LENGTH) + "...";
+        }
+    }
+}
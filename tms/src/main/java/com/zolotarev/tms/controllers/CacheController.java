@@ -0,0 +1,50 @@
+package com.zolotarev.tms.controllers;
+
+import com.zolotarev.tms.dto.CacheStatsResponse;
+import com.zolotarev.tms.dto.TokenCacheStatsResponse;
+import com.zolotarev.tms.service.CacheService;
+import com.zolotarev.tms.service.JwtService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.security.SecurityRequirement;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+@RestController
+@RequiredArgsConstructor
+@RequestMapping("/caches")
+@SecurityRequirement(name = "JWT Bearer")
+@Tag(name="Контроллер кэшей", description="Статистика кэшей сервисного слоя")
+public class CacheController {
+    @Autowired
+    private final CacheService cacheService;
+    @Autowired
+    private final JwtService jwtService;
+
+    @GetMapping("/stats")
+    @Operation(
+            summary = "Статистика кэшей",
+            description = "Размер, попадания, промахи и вытеснения по каждому кэшу"
+    )
+    public ResponseEntity<?> getStats() {
+        List<CacheStatsResponse> stats = cacheService.getStats();
+        return ResponseEntity.status(HttpStatus.OK).body(stats);
+    }
+
+    @GetMapping("/jwt")
+    @Operation(
+            summary = "Статистика кэша проверенных JWT",
+            description = "Попадания в кэш и среднее время проверки подписи"
+    )
+    public ResponseEntity<?> getTokenStats() {
+        TokenCacheStatsResponse stats = jwtService.getCacheStats();
+        return ResponseEntity.status(HttpStatus.OK).body(stats);
+    }
+}
@@ -5,6 +5,7 @@ import com.zolotarev.tms.dto.CommentResponse;
 import com.zolotarev.tms.entities.Comment;
 import com.zolotarev.tms.exception.NoPermissionException;
 import com.zolotarev.tms.service.CommentService;
+import com.zolotarev.tms.service.ExportService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
@@ -13,10 +14,13 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.List;
 
@@ -29,6 +33,8 @@ import java.util.List;
 public class CommentController {
     @Autowired
     private final CommentService commentService;
+    @Autowired
+    private final ExportService exportService;
 
     @PostMapping("/create")
     @Operation(
@@ -43,32 +49,61 @@ public class CommentController {
 
     @GetMapping("/all")
     @Operation(
-            summary = "Получение всех комментариев"
+            summary = "Получение всех комментариев",
+            description = TaskController.CURSOR_DESCRIPTION
     )
     public ResponseEntity<?> findAll(@RequestParam(defaultValue = "0") int page,
-                                     @RequestParam(defaultValue = "5") int limit) {
+                                     @RequestParam(defaultValue = "5") int limit,
+                                     @RequestParam(required = false) String after) {
+        if (after != null) {
+            return ResponseEntity.status(HttpStatus.FOUND).body(commentService.findAll(after, limit));
+        }
         List<CommentResponse> comments = commentService.findAll(PageRequest.of(page, limit));
         return ResponseEntity.status(HttpStatus.FOUND).body(comments);
     }
 
+    @GetMapping("/export")
+    @Operation(
+            summary = "Выгрузка всех комментариев",
+            description = "Потоковая выгрузка всех комментариев в формате ndjson или csv"
+    )
+    public ResponseEntity<StreamingResponseBody> export(@RequestParam(defaultValue = "ndjson") String format) {
+        ExportService.Format exportFormat = ExportService.Format.of(format);
+        StreamingResponseBody body = out -> exportService.exportComments(exportFormat, out);
+        return ResponseEntity.status(HttpStatus.OK)
+                .contentType(MediaType.parseMediaType(exportFormat.contentType))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=comments." + format.toLowerCase())
+                .body(body);
+    }
+
     @GetMapping("/by-task/{taskId}")
     @Operation(
-            summary = "Поиск комментария по id задачи"
+            summary = "Поиск комментария по id задачи",
+            description = TaskController.CURSOR_DESCRIPTION
     )
     public ResponseEntity<?> findByTaskId(@PathVariable Long taskId,
                                           @RequestParam(defaultValue = "0") int page,
-                                          @RequestParam(defaultValue = "5") int limit) {
+                                          @RequestParam(defaultValue = "5") int limit,
+                                          @RequestParam(required = false) String after) {
+        if (after != null) {
+            return ResponseEntity.status(HttpStatus.FOUND).body(commentService.findAllByTaskId(taskId, after, limit));
+        }
         List<CommentResponse> comments = commentService.findAllByTaskId(taskId, PageRequest.of(page, limit));
         return ResponseEntity.status(HttpStatus.FOUND).body(comments);
     }
 
     @GetMapping("/by-author/{authorId}")
     @Operation(
-            summary = "Поиск комментария к задаче по автору"
+            summary = "Поиск комментария к задаче по автору",
+            description = TaskController.CURSOR_DESCRIPTION
     )
     public ResponseEntity<?> findByAuthorId(@PathVariable Long authorId,
                                           @RequestParam(defaultValue = "0") int page,
-                                          @RequestParam(defaultValue = "5") int limit) {
+                                          @RequestParam(defaultValue = "5") int limit,
+                                          @RequestParam(required = false) String after) {
+        if (after != null) {
+            return ResponseEntity.status(HttpStatus.FOUND).body(commentService.findAllByAuthorId(authorId, after, limit));
+        }
         List<CommentResponse> comments = commentService.findAllByAuthorId(authorId, PageRequest.of(page, limit));
         return ResponseEntity.status(HttpStatus.FOUND).body(comments);
     }
@@ -79,8 +114,20 @@ public class CommentController {
             description = "Позволяет удалить комментарий"
     )
     public ResponseEntity<?> delete(@PathVariable Long id, Authentication auth) throws NoPermissionException {
-        Comment comment = commentService.delete(id, auth);
-        return ResponseEntity.status(HttpStatus.OK).body("Comment deleted with id: " + comment.getId());
+        Long commentId = commentService.delete(id, auth);
+        return ResponseEntity.status(HttpStatus.OK).body("Comment deleted with id: " + commentId);
+    }
+
+    @PatchMapping("/{id}")
+    @Operation(
+            summary = "Изменение текста комментария",
+            description = "Изменяет текст одним запросом к БД, изменять комментарий может только его автор"
+    )
+    public ResponseEntity<?> patch(@PathVariable Long id,
+                                   @RequestBody CommentRequest newComment,
+                                   Authentication auth) throws NoPermissionException {
+        Long commentId = commentService.update(id, newComment, auth);
+        return ResponseEntity.status(HttpStatus.OK).body(commentId);
     }
 
     @PutMapping("/update/{id}")
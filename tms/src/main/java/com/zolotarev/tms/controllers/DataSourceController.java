@@ -0,0 +1,36 @@
+package com.zolotarev.tms.controllers;
+
+import com.zolotarev.tms.dto.DataSourceStatsResponse;
+import com.zolotarev.tms.service.DataSourceService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.security.SecurityRequirement;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+@RestController
+@RequiredArgsConstructor
+@RequestMapping("/datasources")
+@SecurityRequirement(name = "JWT Bearer")
+@Tag(name="Контроллер источников данных", description="Состояние основной базы и реплик")
+public class DataSourceController {
+    @Autowired
+    private final DataSourceService dataSourceService;
+
+    @GetMapping("/stats")
+    @Operation(
+            summary = "Статистика пулов соединений",
+            description = "Доступность, выданные соединения, ошибки и состояние пула по основной базе и каждой реплике"
+    )
+    public ResponseEntity<?> getStats() {
+        List<DataSourceStatsResponse> stats = dataSourceService.getStats();
+        return ResponseEntity.status(HttpStatus.OK).body(stats);
+    }
+}
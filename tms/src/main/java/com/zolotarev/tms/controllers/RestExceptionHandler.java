@@ -0,0 +1,31 @@
+package com.zolotarev.tms.controllers;
+
+import com.zolotarev.tms.exception.BadRequestException;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.util.ClassUtils;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+// Errors shared by the controllers; exceptions of a single status carry @ResponseStatus instead
+@RestControllerAdvice
+public class RestExceptionHandler {
+
+    // an entity was changed by another request between reading it and the versioned UPDATE
+    @ExceptionHandler(ObjectOptimisticLockingFailureException.class)
+    ResponseEntity<?> concurrentUpdate(ObjectOptimisticLockingFailureException e, HttpServletRequest request) {
+        HttpStatus status = request.getHeader(HttpHeaders.IF_MATCH) != null
+                ? HttpStatus.PRECONDITION_FAILED : HttpStatus.CONFLICT;
+        String entity = e.getPersistentClassName() != null
+                ? ClassUtils.getShortName(e.getPersistentClassName()) : "Entity";
+        return ResponseEntity.status(status).body(entity + " has been changed concurrently, reload it and retry");
+    }
+
+    @ExceptionHandler(BadRequestException.class)
+    ResponseEntity<?> badRequest(BadRequestException e) {
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+    }
+}
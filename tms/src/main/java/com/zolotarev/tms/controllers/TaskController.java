@@ -1,24 +1,46 @@
 package com.zolotarev.tms.controllers;
 
+import com.zolotarev.tms.dto.BatchItemResult;
+import com.zolotarev.tms.dto.CursorPage;
+import com.zolotarev.tms.dto.ImportReport;
+import com.zolotarev.tms.dto.TaskFilter;
+import com.zolotarev.tms.dto.TaskPatchRequest;
 import com.zolotarev.tms.dto.TaskRequest;
 import com.zolotarev.tms.dto.TaskResponse;
+import com.zolotarev.tms.dto.TaskSearchResponse;
+import com.zolotarev.tms.dto.TaskStreamFilter;
+import com.zolotarev.tms.dto.TaskUpdateRequest;
 import com.zolotarev.tms.entities.Task;
 import com.zolotarev.tms.exception.NoPermissionException;
+import com.zolotarev.tms.exception.PreconditionFailedException;
+import com.zolotarev.tms.service.CommentCountRepairService;
+import com.zolotarev.tms.service.ExportService;
+import com.zolotarev.tms.service.ImportService;
+import com.zolotarev.tms.service.SearchService;
+import com.zolotarev.tms.service.TaskChangeFeed;
 import com.zolotarev.tms.service.TaskService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springdoc.core.annotations.ParameterObject;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.web.PageableDefault;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
 import java.util.List;
 
 @RestController
@@ -27,8 +49,22 @@ import java.util.List;
 @SecurityRequirement(name = "JWT Bearer")
 @Tag(name="Контроллер задач", description="Предназначен для управления пользовательскими задачамми")
 public class TaskController {
+    static final String CURSOR_DESCRIPTION = "Передайте параметр after (пустой для первой страницы), "
+            + "чтобы получить постраничный вывод по курсору: ответ содержит items и next - курсор следующей страницы; "
+            + "limit - не более 100 записей, неверный курсор или limit меньше 1 - 400";
+
     @Autowired
     private final TaskService taskService;
+    @Autowired
+    private final CommentCountRepairService commentCountRepairService;
+    @Autowired
+    private final ExportService exportService;
+    @Autowired
+    private final ImportService importService;
+    @Autowired
+    private final SearchService searchService;
+    @Autowired
+    private final TaskChangeFeed taskChangeFeed;
 
     @PostMapping("/create")
     @Operation(
@@ -43,51 +79,154 @@ public class TaskController {
 
     @GetMapping("/all")
     @Operation(
-            summary = "Поиск всех задач"
+            summary = "Поиск всех задач",
+            description = CURSOR_DESCRIPTION
     )
     public ResponseEntity<?> findAll(@RequestParam(defaultValue = "0") int page,
-                                     @RequestParam(defaultValue = "5") int limit) {
+                                     @RequestParam(defaultValue = "5") int limit,
+                                     @RequestParam(required = false) String after) {
+        if (after != null) {
+            return ResponseEntity.status(HttpStatus.FOUND).body(taskService.findAll(after, limit));
+        }
         List<TaskResponse> tasks = taskService.findAll(PageRequest.of(page, limit));
         return ResponseEntity.status(HttpStatus.FOUND).body(tasks);
     }
 
     @GetMapping("/author/{id}")
     @Operation(
-            summary = "Поиск всех задач по автору"
+            summary = "Поиск всех задач по автору",
+            description = CURSOR_DESCRIPTION
     )
     public ResponseEntity<?> findByAuthorId(@PathVariable Long id,
                                             @RequestParam(defaultValue = "0") int page,
-                                            @RequestParam(defaultValue = "5") int limit) {
+                                            @RequestParam(defaultValue = "5") int limit,
+                                            @RequestParam(required = false) String after) {
+        if (after != null) {
+            return ResponseEntity.status(HttpStatus.FOUND).body(taskService.findByAuthorId(id, after, limit));
+        }
         List<TaskResponse> tasks = taskService.findByAuthorId(id, PageRequest.of(page, limit));
         return ResponseEntity.status(HttpStatus.FOUND).body(tasks);
     }
 
     @GetMapping("/performer/{id}")
     @Operation(
-            summary = "Поиск задач по исполнителю"
+            summary = "Поиск задач по исполнителю",
+            description = CURSOR_DESCRIPTION
     )
     public ResponseEntity<?> findByPerformerId(@PathVariable Long id,
                                                @RequestParam(defaultValue = "0") int page,
-                                               @RequestParam(defaultValue = "5") int limit) {
+                                               @RequestParam(defaultValue = "5") int limit,
+                                               @RequestParam(required = false) String after) {
+        if (after != null) {
+            return ResponseEntity.status(HttpStatus.FOUND).body(taskService.findByPerformerId(id, after, limit));
+        }
         List<TaskResponse> tasks = taskService.findByPerformerId(id, PageRequest.of(page, limit));
         return ResponseEntity.status(HttpStatus.FOUND).body(tasks);
     }
 
     @GetMapping("/status/{status}")
     @Operation(
-            summary = "Поиск задач по статусу"
+            summary = "Поиск задач по статусу",
+            description = CURSOR_DESCRIPTION
     )
     public ResponseEntity<?> findByStatus(@PathVariable Task.TaskStatus status,
-                                          @PageableDefault(page = 0, size = 5) Pageable pageable) {
+                                          @PageableDefault(page = 0, size = 5) Pageable pageable,
+                                          @RequestParam(required = false) String after) {
+        if (after != null) {
+            return ResponseEntity.status(HttpStatus.FOUND)
+                    .body(taskService.findByStatus(status, after, pageable.getPageSize()));
+        }
         List<TaskResponse> tasks = taskService.findByStatus(status, pageable);
         return ResponseEntity.status(HttpStatus.FOUND).body(tasks);
     }
 
+    @GetMapping("/filter")
+    @Operation(
+            summary = "Поиск задач по нескольким критериям",
+            description = "Любая комбинация статуса, приоритета, автора, исполнителя и начала заголовка. "
+                    + "Постраничный вывод по курсору: next из ответа передается в after"
+    )
+    public ResponseEntity<?> filter(@ParameterObject TaskFilter filter,
+                                    @RequestParam(defaultValue = "5") int limit,
+                                    @RequestParam(required = false) String after) {
+        CursorPage<TaskResponse> tasks = taskService.filter(filter, after, limit);
+        return ResponseEntity.status(HttpStatus.FOUND).body(tasks);
+    }
+
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @Operation(
+            summary = "Поток изменений задач (Server-Sent Events)",
+            description = "События TASK_CREATED, TASK_UPDATED, TASK_DELETED, COMMENT_CREATED, COMMENT_UPDATED, "
+                    + "COMMENT_DELETED после коммита, с фильтром по автору, исполнителю и статусу. "
+                    + "Событие RESYNC означает, что часть изменений пропущена (медленный клиент или переподключение "
+                    + "с Last-Event-ID) и списки нужно загрузить заново"
+    )
+    public SseEmitter stream(@ParameterObject TaskStreamFilter filter,
+                             @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        return taskChangeFeed.subscribe(filter, lastEventId);
+    }
+
+    @GetMapping("/export")
+    @Operation(
+            summary = "Выгрузка всех задач",
+            description = "Потоковая выгрузка всех задач в формате ndjson или csv"
+    )
+    public ResponseEntity<StreamingResponseBody> export(@RequestParam(defaultValue = "ndjson") String format) {
+        ExportService.Format exportFormat = ExportService.Format.of(format);
+        StreamingResponseBody body = out -> exportService.exportTasks(exportFormat, out);
+        return ResponseEntity.status(HttpStatus.OK)
+                .contentType(MediaType.parseMediaType(exportFormat.contentType))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=tasks." + format.toLowerCase())
+                .body(body);
+    }
+
+    @PostMapping("/import")
+    @Operation(
+            summary = "Загрузка задач",
+            description = "Потоковая загрузка задач из тела запроса в формате ndjson или csv (как в выгрузке). "
+                    + "Задачи сохраняются частями, каждая часть в своей транзакции; "
+                    + "в ответе количество загруженных и отклоненных строк"
+    )
+    public ResponseEntity<?> importTasks(@RequestParam(defaultValue = "ndjson") String format,
+                                         HttpServletRequest request,
+                                         Authentication auth) throws IOException {
+        ImportReport report = importService.importTasks(ExportService.Format.of(format), request.getInputStream(), auth);
+        return ResponseEntity.status(HttpStatus.OK).body(report);
+    }
+
+    @GetMapping("/search")
+    @Operation(
+            summary = "Полнотекстовый поиск задач",
+            description = "Поиск по заголовку, описанию и тексту комментариев, результаты упорядочены по релевантности"
+    )
+    public ResponseEntity<?> search(@RequestParam String query,
+                                    @RequestParam(defaultValue = "0") int page,
+                                    @RequestParam(defaultValue = "10") int limit) {
+        TaskSearchResponse response = searchService.search(query, page, limit);
+        return ResponseEntity.status(HttpStatus.FOUND).body(response);
+    }
+
+    @PostMapping("/search/reindex")
+    @Operation(
+            summary = "Перестроение поискового индекса",
+            description = "Запускает полное перестроение индекса задач из базы данных в фоне"
+    )
+    public ResponseEntity<?> reindex() {
+        searchService.reindex();
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body("Search index rebuild started");
+    }
+
     @GetMapping("/{id}")
     @Operation(
-            summary = "Поиск конкретной задачи по id"
+            summary = "Поиск конкретной задачи по id",
+            description = "Ответ содержит ETag; с заголовком If-None-Match возвращает 304, если задача не изменилась"
     )
-    public ResponseEntity<?> findTaskById(@PathVariable Long id) {
+    public ResponseEntity<?> findTaskById(@PathVariable Long id, WebRequest request) {
+        // the versions decide, the task is loaded and mapped only when the client's copy is stale;
+        // checkNotModified also sets the ETag header
+        if (request.checkNotModified(taskService.findTaskEtag(id))) {
+            return null;
+        }
         TaskResponse task = taskService.findTaskById(id);
         return ResponseEntity.status(HttpStatus.FOUND).body(task);
     }
@@ -98,19 +237,74 @@ public class TaskController {
             description = "Позволяет удалить задачу"
     )
     public ResponseEntity<?> deleteTask(@PathVariable Long id, Authentication auth) throws NoPermissionException {
-        Task task = taskService.delete(id, auth);
-        return ResponseEntity.status(HttpStatus.OK).body("Task deleted with id: " + task.getId());
+        Long taskId = taskService.delete(id, auth);
+        return ResponseEntity.status(HttpStatus.OK).body("Task deleted with id: " + taskId);
     }
 
     @PutMapping("/update/{id}")
     @Operation(
             summary = "Изменение задачи",
-            description = "Позволяет изменить задачу"
+            description = "Позволяет изменить задачу. С заголовком If-Match (ETag из GET /tasks/{id}) "
+                    + "возвращает 412, если задача уже изменена"
     )
     public ResponseEntity<?> updateTask(@RequestParam Long id,
                                         @RequestBody TaskRequest newTask,
-                                        Authentication auth) throws NoPermissionException {
-        Long taskId = taskService.update(id, newTask, auth);
+                                        @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                                        Authentication auth) throws NoPermissionException, PreconditionFailedException {
+        Long taskId = taskService.update(id, newTask, ifMatch, auth);
         return ResponseEntity.status(HttpStatus.OK).body(taskId);
     }
+
+    @PatchMapping("/{id}")
+    @Operation(
+            summary = "Частичное изменение задачи",
+            description = "Изменяет только переданные поля (например, только статус или исполнителя) одним запросом к БД; "
+                    + "unassignPerformer снимает исполнителя. Изменять задачу может только ее автор"
+    )
+    public ResponseEntity<?> patchTask(@PathVariable Long id,
+                                       @RequestBody TaskPatchRequest patch,
+                                       Authentication auth) throws NoPermissionException {
+        Long taskId = taskService.patch(id, patch, auth);
+        return ResponseEntity.status(HttpStatus.OK).body(taskId);
+    }
+
+    @PostMapping("/batch/create")
+    @Operation(
+            summary = "Пакетное создание задач",
+            description = "Создает до 500 задач в одной транзакции, возвращает результат по каждой задаче"
+    )
+    public ResponseEntity<?> createBatch(@RequestBody List<TaskRequest> tasks, Authentication auth) {
+        List<BatchItemResult> results = taskService.createBatch(tasks, auth);
+        return ResponseEntity.status(HttpStatus.OK).body(results);
+    }
+
+    @PutMapping("/batch/update")
+    @Operation(
+            summary = "Пакетное изменение задач",
+            description = "Изменяет до 500 задач в одной транзакции, возвращает результат по каждой задаче"
+    )
+    public ResponseEntity<?> updateBatch(@RequestBody List<TaskUpdateRequest> tasks, Authentication auth) {
+        List<BatchItemResult> results = taskService.updateBatch(tasks, auth);
+        return ResponseEntity.status(HttpStatus.OK).body(results);
+    }
+
+    @PostMapping("/batch/delete")
+    @Operation(
+            summary = "Пакетное удаление задач",
+            description = "Удаляет до 500 задач вместе с комментариями, возвращает результат по каждой задаче"
+    )
+    public ResponseEntity<?> deleteBatch(@RequestBody List<Long> ids, Authentication auth) {
+        List<BatchItemResult> results = taskService.deleteBatch(ids, auth);
+        return ResponseEntity.status(HttpStatus.OK).body(results);
+    }
+
+    @PostMapping("/comment-counts/repair")
+    @Operation(
+            summary = "Пересчет счетчиков комментариев",
+            description = "Пересчитывает количество комментариев у всех задач, возвращает число исправленных задач"
+    )
+    public ResponseEntity<?> repairCommentCounts() {
+        int fixed = commentCountRepairService.repair();
+        return ResponseEntity.status(HttpStatus.OK).body(fixed);
+    }
 }
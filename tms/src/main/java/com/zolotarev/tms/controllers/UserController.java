@@ -2,9 +2,12 @@ package com.zolotarev.tms.controllers;
 
 import com.zolotarev.tms.dto.AuthRequest;
 import com.zolotarev.tms.dto.AuthResponse;
+import com.zolotarev.tms.dto.UserDeletionJobResponse;
+import com.zolotarev.tms.dto.UserProfileResponse;
 import com.zolotarev.tms.dto.UserRequest;
 import com.zolotarev.tms.dto.UserResponse;
-import com.zolotarev.tms.entities.User;
+import com.zolotarev.tms.exception.PreconditionFailedException;
+import com.zolotarev.tms.service.UserDeletionService;
 import com.zolotarev.tms.service.UserService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
@@ -13,11 +16,14 @@ import jakarta.validation.Valid;
 import lombok.AllArgsConstructor;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
+import java.net.URI;
 import java.util.List;
 
 @RestController
@@ -27,6 +33,8 @@ import java.util.List;
 public class UserController {
     @Autowired
     private UserService userService;
+    @Autowired
+    private UserDeletionService userDeletionService;
 
     @PostMapping("/register")
     @Operation(
@@ -51,21 +59,52 @@ public class UserController {
     @GetMapping("/{id}")
     @SecurityRequirement(name = "JWT Bearer")
     @Operation(
-            summary = "Поиск пользователя по id"
+            summary = "Поиск пользователя по id",
+            description = "Ответ содержит ETag; с заголовком If-None-Match возвращает 304, если данные не изменились"
     )
-    ResponseEntity<?> getUserById(@PathVariable Long id) {
+    ResponseEntity<?> getUserById(@PathVariable Long id, WebRequest request) {
         UserResponse response = userService.getById(id);
+        // partial responses have no ETag and are always sent in full; checkNotModified sets the header
+        if (response.getEtag() != null && request.checkNotModified(response.getEtag())) {
+            return null;
+        }
+        return ResponseEntity.status(HttpStatus.FOUND).body(response);
+    }
+
+    @GetMapping("/{id}/profile")
+    @SecurityRequirement(name = "JWT Bearer")
+    @Operation(
+            summary = "Профиль пользователя",
+            description = "Количество задач и комментариев пользователя и первые limit (не более 50) записей каждого раздела, "
+                    + "следующие страницы доступны по курсору next"
+    )
+    ResponseEntity<?> getUserProfile(@PathVariable Long id,
+                                     @RequestParam(defaultValue = "10") int limit) {
+        UserProfileResponse response = userService.getProfile(id, limit);
         return ResponseEntity.status(HttpStatus.FOUND).body(response);
     }
 
     @DeleteMapping("/delete/{id}")
     @SecurityRequirement(name = "JWT Bearer")
     @Operation(
-            summary = "Удаление пользователя по id"
+            summary = "Удаление пользователя по id",
+            description = "Пользователь сразу выходит из системы, его задачи и комментарии удаляются в фоне частями; "
+                    + "возвращает 202 и задание удаления, статус которого доступен по ссылке из Location"
     )
     ResponseEntity<?> deleteUser(@PathVariable Long id) {
-        User user = userService.deleteUser(id);
-        return ResponseEntity.status(HttpStatus.OK).body("User deleted with id: " + user.getId());
+        UserDeletionJobResponse job = userDeletionService.enqueue(id);
+        return ResponseEntity.accepted().location(URI.create("/users/deletion-jobs/" + job.getId())).body(job);
+    }
+
+    @GetMapping("/deletion-jobs/{id}")
+    @SecurityRequirement(name = "JWT Bearer")
+    @Operation(
+            summary = "Статус удаления пользователя",
+            description = "Состояние задания и количество уже удаленных комментариев и задач"
+    )
+    ResponseEntity<?> getDeletionJob(@PathVariable Long id) {
+        UserDeletionJobResponse job = userDeletionService.getJob(id);
+        return ResponseEntity.status(HttpStatus.FOUND).body(job);
     }
 
     @GetMapping
@@ -80,9 +119,14 @@ public class UserController {
 
     @PutMapping("/update")
     @SecurityRequirement(name = "JWT Bearer")
-    ResponseEntity<?> updateUser(@RequestBody UserRequest request, Authentication auth) {
-        UserResponse response = userService.updateUser(request, auth);
+    @Operation(
+            summary = "Изменение текущего пользователя",
+            description = "С заголовком If-Match (ETag из GET /users/{id}) возвращает 412, если пользователь уже изменен"
+    )
+    ResponseEntity<?> updateUser(@RequestBody UserRequest request,
+                                 @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                                 Authentication auth) throws PreconditionFailedException {
+        UserResponse response = userService.updateUser(request, ifMatch, auth);
         return ResponseEntity.status(HttpStatus.OK).body("User updated successfully: " + response.getId());
     }
-
 }
@@ -0,0 +1,24 @@
+package com.zolotarev.tms.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class BatchItemResult {
+    // position of the item in the request
+    private int index;
+    private Long id;
+    private boolean success;
+    private String error;
+
+    public static BatchItemResult ok(int index, Long id) {
+        return new BatchItemResult(index, id, true, null);
+    }
+
+    public static BatchItemResult failed(int index, Long id, String error) {
+        return new BatchItemResult(index, id, false, error);
+    }
+}
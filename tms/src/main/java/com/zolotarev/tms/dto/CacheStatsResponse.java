@@ -0,0 +1,13 @@
+package com.zolotarev.tms.dto;
+
+import lombok.Data;
+
+@Data
+public class CacheStatsResponse {
+    private String name;
+    private long size;
+    private long hits;
+    private long misses;
+    private double hitRate;
+    private long evictions;
+}
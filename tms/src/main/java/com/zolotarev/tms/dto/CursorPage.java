@@ -0,0 +1,61 @@
+package com.zolotarev.tms.dto;
+
+import com.zolotarev.tms.exception.BadRequestException;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.Function;
+
+// One page of a keyset listing: items ordered by id and an opaque token for the next page
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class CursorPage<T> {
+    public static final int MAX_LIMIT = 100;
+    private static final String PREFIX = "id:";
+
+    private List<T> items;
+    // null when there is nothing after the last item
+    private String next;
+
+    // rows must be fetched with limit + 1 so the extra one tells whether a next page exists
+    public static <E, T> CursorPage<T> of(List<E> rows, int limit, Function<E, Long> idOf, Function<E, T> mapper) {
+        boolean hasNext = rows.size() > limit;
+        List<E> page = hasNext ? rows.subList(0, limit) : rows;
+        String next = hasNext ? encode(idOf.apply(page.get(page.size() - 1))) : null;
+        return new CursorPage<>(page.stream().map(mapper).toList(), next);
+    }
+
+    // page size of a cursor request: larger requests get MAX_LIMIT items
+    public static int limit(int requested) {
+        if (requested < 1) {
+            throw new BadRequestException("Limit must be positive: " + requested);
+        }
+        return Math.min(requested, MAX_LIMIT);
+    }
+
+    public static String encode(Long lastId) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((PREFIX + lastId).getBytes(StandardCharsets.UTF_8));
+    }
+
+    // empty cursor means "from the beginning"
+    public static Long decode(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return 0L;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            if (raw.startsWith(PREFIX)) {
+                return Long.parseLong(raw.substring(PREFIX.length()));
+            }
+        } catch (IllegalArgumentException e) {
+            // not Base64 or not a number
+        }
+        throw new BadRequestException("Malformed cursor: " + cursor);
+    }
+}
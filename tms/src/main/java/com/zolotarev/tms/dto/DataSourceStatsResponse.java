@@ -0,0 +1,17 @@
+package com.zolotarev.tms.dto;
+
+import lombok.Data;
+
+@Data
+public class DataSourceStatsResponse {
+    private String name;
+    private boolean healthy;
+    // connections handed out by the router and failed attempts
+    private long connections;
+    private long failures;
+    // current state of the Hikari pool
+    private int active;
+    private int idle;
+    private int total;
+    private int awaiting;
+}
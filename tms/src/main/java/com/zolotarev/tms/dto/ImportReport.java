@@ -0,0 +1,25 @@
+package com.zolotarev.tms.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+public class ImportReport {
+    private long imported;
+    private long rejected;
+    private int chunks;
+    // first rejected lines only, see rejected for the total
+    private List<RejectedLine> rejectedLines = new ArrayList<>();
+
+    @Data
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class RejectedLine {
+        private long line;
+        private String error;
+    }
+}
@@ -0,0 +1,71 @@
+package com.zolotarev.tms.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.zolotarev.tms.entities.Task;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// A committed change of a task or of one of its comments, pushed to /tasks/stream. authorId, performerId
+// and status are the values of the task after the change; they are looked up by TaskChangeFeed when the
+// service doesn't have them at hand, and stay unknown for deleted tasks.
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class TaskChangeEvent {
+    // sequence number, also the id of the SSE event
+    private long id;
+    private Type type;
+    private Long taskId;
+    private Long commentId;
+    private Long authorId;
+    private Long performerId;
+    private Task.TaskStatus status;
+    // performerId and status are known (a null performerId then means there is no performer)
+    @JsonIgnore
+    private boolean resolved;
+    // the task may have left a performer or status list, the previous value is not always known
+    @JsonIgnore
+    private boolean performerChanged;
+    @JsonIgnore
+    private boolean statusChanged;
+
+    public static TaskChangeEvent of(Type type, Task task) {
+        TaskChangeEvent event = new TaskChangeEvent();
+        event.setType(type);
+        event.setTaskId(task.getId());
+        event.setAuthorId(task.getAuthorId() != null ? task.getAuthorId()
+                : task.getAuthor() != null ? task.getAuthor().getId() : null);
+        event.setPerformerId(task.getPerformerId() != null ? task.getPerformerId()
+                : task.getPerformer() != null ? task.getPerformer().getId() : null);
+        event.setStatus(task.getStatus());
+        event.setResolved(true);
+        return event;
+    }
+
+    public static TaskChangeEvent ofTask(Type type, Long taskId, Long authorId) {
+        TaskChangeEvent event = new TaskChangeEvent();
+        event.setType(type);
+        event.setTaskId(taskId);
+        event.setAuthorId(authorId);
+        return event;
+    }
+
+    // taskId may be null, it is looked up by the comment id then
+    public static TaskChangeEvent ofComment(Type type, Long commentId, Long taskId) {
+        TaskChangeEvent event = new TaskChangeEvent();
+        event.setType(type);
+        event.setCommentId(commentId);
+        event.setTaskId(taskId);
+        return event;
+    }
+
+    public enum Type {
+        TASK_CREATED,
+        TASK_UPDATED,
+        TASK_DELETED,
+        COMMENT_CREATED,
+        COMMENT_UPDATED,
+        COMMENT_DELETED
+    }
+}
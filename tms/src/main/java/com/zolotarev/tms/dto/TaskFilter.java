@@ -0,0 +1,18 @@
+package com.zolotarev.tms.dto;
+
+import com.zolotarev.tms.entities.Task;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Criteria of /tasks/filter, every field is optional and the given ones are combined with AND
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class TaskFilter {
+    private Task.TaskStatus status;
+    private Task.TaskPriority priority;
+    private Long authorId;
+    private Long performerId;
+    private String titlePrefix;
+}
@@ -0,0 +1,30 @@
+package com.zolotarev.tms.dto;
+
+import com.zolotarev.tms.entities.Task;
+import lombok.Data;
+
+// Partial update of a task: null fields are left as they are, unassignPerformer removes the performer
+@Data
+public class TaskPatchRequest {
+    private String title;
+    private String description;
+    private Task.TaskStatus status;
+    private Task.TaskPriority priority;
+    private Long performerId;
+    private boolean unassignPerformer;
+
+    public boolean hasChanges() {
+        return title != null || description != null || status != null || priority != null
+                || performerId != null || unassignPerformer;
+    }
+
+    // fields of the task document in the search index
+    public boolean changesIndexedFields() {
+        return title != null || description != null || status != null || priority != null;
+    }
+
+    // fields shown in user profiles, see UserService.getById
+    public boolean changesProfiles() {
+        return title != null || performerId != null || unassignPerformer;
+    }
+}
@@ -0,0 +1,24 @@
+package com.zolotarev.tms.dto;
+
+import com.zolotarev.tms.entities.Task;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+// Flat row of a task listing, filled by a JPQL constructor expression.
+// Not an entity, so nothing is hydrated or tracked by the persistence context.
+@Data
+@AllArgsConstructor
+public class TaskRow {
+    private Long id;
+    private String title;
+    private String description;
+    private Task.TaskStatus status;
+    private Task.TaskPriority priority;
+    private Long authorId;
+    private String authorFirstName;
+    private String authorLastName;
+    private Long performerId;
+    private String performerFirstName;
+    private String performerLastName;
+    private Integer commentCount;
+}
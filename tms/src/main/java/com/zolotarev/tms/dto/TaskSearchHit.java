@@ -0,0 +1,16 @@
+package com.zolotarev.tms.dto;
+
+import com.zolotarev.tms.entities.Task;
+import org.hibernate.search.mapper.pojo.mapping.definition.annotation.FieldProjection;
+import org.hibernate.search.mapper.pojo.mapping.definition.annotation.IdProjection;
+import org.hibernate.search.mapper.pojo.mapping.definition.annotation.ProjectionConstructor;
+import org.hibernate.search.mapper.pojo.mapping.definition.annotation.ScoreProjection;
+
+// Built from stored index fields only, a search doesn't touch the database
+@ProjectionConstructor
+public record TaskSearchHit(@IdProjection Long id,
+                            @FieldProjection String title,
+                            @FieldProjection Task.TaskStatus status,
+                            @FieldProjection Task.TaskPriority priority,
+                            @ScoreProjection float score) {
+}
@@ -0,0 +1,15 @@
+package com.zolotarev.tms.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class TaskSearchResponse {
+    private long total;
+    private List<TaskSearchHit> items;
+}
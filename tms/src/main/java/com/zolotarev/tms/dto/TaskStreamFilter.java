@@ -0,0 +1,28 @@
+package com.zolotarev.tms.dto;
+
+import com.zolotarev.tms.entities.Task;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Criteria of /tasks/stream, every field is optional and the given ones are combined with AND.
+// An event whose values are unknown passes, so do changes that may have moved the task out of the list.
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class TaskStreamFilter {
+    private Long authorId;
+    private Long performerId;
+    private Task.TaskStatus status;
+
+    public boolean matches(TaskChangeEvent event) {
+        if (authorId != null && event.getAuthorId() != null && !authorId.equals(event.getAuthorId())) {
+            return false;
+        }
+        if (!event.isResolved()) {
+            return true;
+        }
+        return (performerId == null || performerId.equals(event.getPerformerId()) || event.isPerformerChanged())
+                && (status == null || status == event.getStatus() || event.isStatusChanged());
+    }
+}
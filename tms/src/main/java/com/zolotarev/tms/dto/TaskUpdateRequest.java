@@ -0,0 +1,9 @@
+package com.zolotarev.tms.dto;
+
+import lombok.Data;
+
+@Data
+public class TaskUpdateRequest {
+    private Long id;
+    private TaskRequest task;
+}
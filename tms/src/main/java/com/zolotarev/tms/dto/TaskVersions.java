@@ -0,0 +1,14 @@
+package com.zolotarev.tms.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+// Versions a TaskResponse is built from: the task row (comment count included) and the names
+// of its author and performer. Filled by a JPQL constructor expression, see TaskRepository.findVersionsById.
+@Data
+@AllArgsConstructor
+public class TaskVersions {
+    private Long task;
+    private Long author;
+    private Long performer;
+}
@@ -0,0 +1,23 @@
+package com.zolotarev.tms.dto;
+
+import com.zolotarev.tms.entities.UserDeletionJob;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class UserDeletionJobResponse {
+    private Long id;
+    private Long userId;
+    private UserDeletionJob.Status status;
+    private long commentsDeleted;
+    private long tasksDeleted;
+    private long tasksUnassigned;
+    private String error;
+    private Instant createdAt;
+    private Instant updatedAt;
+}
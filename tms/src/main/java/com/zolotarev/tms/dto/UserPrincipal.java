@@ -0,0 +1,30 @@
+package com.zolotarev.tms.dto;
+
+import com.zolotarev.tms.entities.User;
+import lombok.Value;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import java.security.Principal;
+import java.util.List;
+
+// Authenticated user built only from verified JWT claims, no entity behind it
+@Value
+public class UserPrincipal implements Principal {
+    Long id;
+    String email;
+    User.Role role;
+    int tokenVersion;
+
+    public List<GrantedAuthority> getAuthorities() {
+        if (role == null) {
+            return List.of();
+        }
+        return List.of(new SimpleGrantedAuthority("ROLE_" + role.name()));
+    }
+
+    @Override
+    public String getName() {
+        return email;
+    }
+}
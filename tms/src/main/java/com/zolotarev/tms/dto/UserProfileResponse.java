@@ -0,0 +1,21 @@
+package com.zolotarev.tms.dto;
+
+import com.zolotarev.tms.entities.User;
+import lombok.Data;
+
+// Bounded user profile: totals plus first pages of each section,
+// the rest is reachable with the cursor endpoints using the next tokens
+@Data
+public class UserProfileResponse {
+    private Long id;
+    private String firstName;
+    private String lastName;
+    private String email;
+    private User.Role role;
+    private long asAuthorTotal;
+    private long asExecutorTotal;
+    private long commentsTotal;
+    private CursorPage<String> asAuthor;
+    private CursorPage<String> asExecutor;
+    private CursorPage<String> comments;
+}
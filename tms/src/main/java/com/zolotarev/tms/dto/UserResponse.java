@@ -1,8 +1,10 @@
 package com.zolotarev.tms.dto;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.zolotarev.tms.entities.User;
 import lombok.Data;
 
+import java.util.ArrayList;
 import java.util.List;
 
 @Data
@@ -15,4 +17,9 @@ public class UserResponse {
     private List<String> asAuthor;
     private List<String> asExecutor;
     private List<String> comments;
+    // sections that could not be loaded in time, they are null in this response
+    private List<String> unavailable = new ArrayList<>();
+    // set for complete responses of GET /users/{id}, sent as the ETag header
+    @JsonIgnore
+    private String etag;
 }
@@ -6,17 +6,21 @@ import jakarta.validation.constraints.NotNull;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.ColumnDefault;
+import org.hibernate.search.mapper.pojo.mapping.definition.annotation.FullTextField;
 //import org.springframework.data.annotation.Id;
 
 @Entity
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
+// schema and indexes are defined by the Flyway scripts in db/migration
 @Table(name = "comments")
 @Schema(description = "Сущность комментариев")
 public class Comment {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "comments_id_gen")
+    @SequenceGenerator(name = "comments_id_gen", sequenceName = "comments_seq", allocationSize = 50)
     private Long id;
 
     @ManyToOne(fetch = FetchType.LAZY)
@@ -37,5 +41,11 @@ public class Comment {
 
     @Column(name = "text")
     @NotNull
+    @FullTextField
     private String text;
+
+    @Version
+    @Column(nullable = false)
+    @ColumnDefault("0")
+    private Long version;
 }
@@ -6,6 +6,15 @@ import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.ColumnDefault;
+import org.hibernate.annotations.OptimisticLock;
+import org.hibernate.search.mapper.pojo.automaticindexing.ReindexOnUpdate;
+import org.hibernate.search.engine.backend.types.Projectable;
+import org.hibernate.search.mapper.pojo.mapping.definition.annotation.FullTextField;
+import org.hibernate.search.mapper.pojo.mapping.definition.annotation.Indexed;
+import org.hibernate.search.mapper.pojo.mapping.definition.annotation.IndexedEmbedded;
+import org.hibernate.search.mapper.pojo.mapping.definition.annotation.IndexingDependency;
+import org.hibernate.search.mapper.pojo.mapping.definition.annotation.KeywordField;
 //import org.springframework.data.annotation.Id;
 
 
@@ -16,21 +25,29 @@ import java.util.List;
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
+// schema and indexes are defined by the Flyway scripts in db/migration
 @Table(name = "tasks")
 @Schema(description = "Сущность задачи")
+@Indexed(index = "tasks")
 public class Task {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    // pooled sequence instead of IDENTITY so Hibernate can batch inserts
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "tasks_id_gen")
+    @SequenceGenerator(name = "tasks_id_gen", sequenceName = "tasks_seq", allocationSize = 50)
     private Long id;
     @Column(nullable = false)
+    @FullTextField(projectable = Projectable.YES)
     private String title;
     @Column
+    @FullTextField
     private String description;
     @Column(nullable = false)
     @Enumerated(EnumType.STRING)
+    @KeywordField(projectable = Projectable.YES)
     private TaskStatus status;
     @Column(nullable = false)
     @Enumerated(EnumType.STRING)
+    @KeywordField(projectable = Projectable.YES)
     private TaskPriority priority;
 
     @ManyToOne
@@ -49,9 +66,28 @@ public class Task {
     @Column(name = "performer_id", insertable = false, updatable = false)
     private Long performerId;
 
+    // comment texts are part of the task document in the search index; a comment write doesn't
+    // reindex the task in its own transaction (that loads every comment of the task),
+    // CommentService reindexes it after the commit on the search executor instead;
+    // comments don't bump the version, the bulk comment count update does
     @OneToMany(mappedBy = "task", cascade = CascadeType.ALL, orphanRemoval = true)
+    @OptimisticLock(excluded = true)
+    @IndexedEmbedded(includePaths = "text")
+    @IndexingDependency(reindexOnUpdate = ReindexOnUpdate.SHALLOW)
     private List<Comment> comments = new ArrayList<>();
 
+    // maintained by CommentService with single UPDATE statements, never derived from comments;
+    // not updatable, so a dirty-checked task doesn't write back the counter it was loaded with
+    @Column(nullable = false, updatable = false)
+    @ColumnDefault("0")
+    private Integer commentCount = 0;
+
+    // optimistic locking; with the author and performer versions it makes the ETag of GET /tasks/{id}
+    @Version
+    @Column(nullable = false)
+    @ColumnDefault("0")
+    private Long version;
+
     public enum TaskStatus {
         ON_HOLD,
         IN_PROGRESS,
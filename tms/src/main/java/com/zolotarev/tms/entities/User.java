@@ -10,6 +10,8 @@ import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.ColumnDefault;
+import org.hibernate.annotations.OptimisticLock;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
@@ -23,12 +25,12 @@ import java.util.List;
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
-@Table(name = "user_table", indexes = {
-        @Index(name = "email_idx", columnList = "email")
-})
+// schema and indexes are defined by the Flyway scripts in db/migration
+@Table(name = "user_table")
 public class User implements UserDetails {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "user_table_id_gen")
+    @SequenceGenerator(name = "user_table_id_gen", sequenceName = "user_table_seq", allocationSize = 50)
     private Long id;
     @NotBlank
     @Size(min = 3, max=40)
@@ -48,16 +50,31 @@ public class User implements UserDetails {
     @Enumerated(EnumType.STRING)
     private Role role;
 
+    // bumped on update/delete, tokens carrying an older value are rejected
+    @Column(nullable = false)
+    @ColumnDefault("0")
+    @Builder.Default
+    private Integer tokenVersion = 0;
+
+    // optimistic locking, part of the ETag of GET /users/{id}
+    @Version
+    @Column(nullable = false)
+    @ColumnDefault("0")
+    private Long version;
+
+    // adding a task or comment doesn't change the user, the collections are left out of the version
     @OneToMany(mappedBy = "author",
             cascade = CascadeType.ALL,
             orphanRemoval = true,
             fetch = FetchType.LAZY)
+    @OptimisticLock(excluded = true)
     @Builder.Default
     private List<Task> authorTasks = new ArrayList<>();
 
     @OneToMany(mappedBy = "performer",
             cascade = {CascadeType.PERSIST, CascadeType.MERGE, CascadeType.REFRESH},
             fetch = FetchType.LAZY)
+    @OptimisticLock(excluded = true)
     @Builder.Default
     private List<Task> performerTasks = new ArrayList<>();
 
@@ -65,6 +82,7 @@ public class User implements UserDetails {
             cascade = CascadeType.ALL,
             orphanRemoval = true,
             fetch = FetchType.LAZY)
+    @OptimisticLock(excluded = true)
     @Builder.Default
     private List<Comment> comments = new ArrayList<>();
 
@@ -0,0 +1,55 @@
+package com.zolotarev.tms.entities;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.ColumnDefault;
+
+import java.time.Instant;
+
+// Deletion of a user and its data, run in the background by UserDeletionService.
+// No foreign key to the user: the job outlives it.
+@Entity
+@Data
+@NoArgsConstructor
+// schema and indexes are defined by the Flyway scripts in db/migration
+@Table(name = "user_deletion_jobs")
+public class UserDeletionJob {
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "user_deletion_jobs_id_gen")
+    @SequenceGenerator(name = "user_deletion_jobs_id_gen", sequenceName = "user_deletion_jobs_seq", allocationSize = 50)
+    private Long id;
+
+    @Column(nullable = false)
+    private Long userId;
+
+    @Column(nullable = false)
+    @Enumerated(EnumType.STRING)
+    private Status status;
+
+    // progress, added to by every committed chunk
+    @Column(nullable = false)
+    @ColumnDefault("0")
+    private long commentsDeleted;
+    @Column(nullable = false)
+    @ColumnDefault("0")
+    private long tasksDeleted;
+    @Column(nullable = false)
+    @ColumnDefault("0")
+    private long tasksUnassigned;
+
+    @Column(length = 1000)
+    private String error;
+
+    @Column(nullable = false)
+    private Instant createdAt;
+    @Column(nullable = false)
+    private Instant updatedAt;
+
+    public enum Status {
+        PENDING,
+        RUNNING,
+        DONE,
+        FAILED
+    }
+}
@@ -0,0 +1,8 @@
+package com.zolotarev.tms.exception;
+
+// a request the client has to fix, answered with 400 and the message by RestExceptionHandler
+public class BadRequestException extends IllegalArgumentException {
+    public BadRequestException(String message) {
+        super(message);
+    }
+}
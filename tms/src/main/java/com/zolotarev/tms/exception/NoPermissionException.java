@@ -1,5 +1,9 @@
 package com.zolotarev.tms.exception;
 
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.FORBIDDEN)
 public class NoPermissionException extends Exception{
     public NoPermissionException(String message) {
         super(message);
@@ -0,0 +1,14 @@
+package com.zolotarev.tms.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+import java.util.NoSuchElementException;
+
+// the row of a single-statement PATCH or DELETE doesn't exist, as opposed to NoPermissionException
+@ResponseStatus(HttpStatus.NOT_FOUND)
+public class NotFoundException extends NoSuchElementException {
+    public NotFoundException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,12 @@
+package com.zolotarev.tms.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+// If-Match of an update names a version that is no longer current
+@ResponseStatus(HttpStatus.PRECONDITION_FAILED)
+public class PreconditionFailedException extends Exception {
+    public PreconditionFailedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,12 @@
+package com.zolotarev.tms.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+// /tasks/stream has application.stream.max-subscribers open connections already
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class StreamLimitException extends RuntimeException {
+    public StreamLimitException(String message) {
+        super(message);
+    }
+}
@@ -1,14 +1,86 @@
 package com.zolotarev.tms.repository;
 
 import com.zolotarev.tms.entities.Comment;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
+@Transactional(readOnly = true)
 public interface CommentRepository extends JpaRepository<Comment, Long> {
     List<Comment> findAllByTaskId(Long taskId, Pageable pageable);
+
     List<Comment> findAllByAuthorId(Long authorId, Pageable pageable);
+
+    // keyset variants of the listings above
+    List<Comment> findByIdGreaterThanOrderByIdAsc(Long afterId, Limit limit);
+    List<Comment> findAllByTaskIdAndIdGreaterThanOrderByIdAsc(Long taskId, Long afterId, Limit limit);
+    List<Comment> findAllByAuthorIdAndIdGreaterThanOrderByIdAsc(Long authorId, Long afterId, Limit limit);
+
+    // comments section of UserResponse, rows are (id, task id)
+    @Query("SELECT c.id, c.taskId FROM Comment c WHERE c.authorId = ?1 ORDER BY c.id")
+    List<Object[]> findTaskIdsByAuthorId(Long authorId);
+
+    // chunks of UserDeletionService
+    @Query("SELECT c.id, c.taskId FROM Comment c WHERE c.authorId = ?1 ORDER BY c.id")
+    List<Object[]> findTaskIdsByAuthorId(Long authorId, Limit limit);
+
+    // forward-only cursor for exports, has to be consumed inside a transaction
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT c FROM Comment c ORDER BY c.id")
+    Stream<Comment> streamAll();
+
+    // the author check is part of the statement, 0 means there is no such comment or it has another author
+    @Modifying
+    @Transactional
+    @Query("UPDATE VERSIONED Comment c SET c.text = ?3 WHERE c.id = ?1 AND c.authorId = ?2")
+    int updateText(Long id, Long authorId, String text);
+
+    @Query("SELECT c.taskId FROM Comment c WHERE c.id = ?1")
+    Optional<Long> findTaskIdById(Long id);
+
+    // values of /tasks/stream events, rows are (id, task id, task author id, task performer id, task status)
+    @Query("SELECT c.id, t.id, t.authorId, t.performerId, t.status FROM Comment c JOIN c.task t WHERE c.id IN ?1")
+    List<Object[]> findStreamKeysByIdIn(Collection<Long> ids);
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM Comment c WHERE c.id = ?1 AND c.authorId = ?2")
+    int deleteByIdAndAuthorId(Long id, Long authorId);
+
+    // comments of the task if it belongs to the author, see TaskService.delete
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM Comment c WHERE c.taskId = ?1 "
+            + "AND EXISTS (SELECT t.id FROM Task t WHERE t.id = ?1 AND t.authorId = ?2)")
+    int deleteAllByTaskIdAndTaskAuthorId(Long taskId, Long authorId);
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM Comment c WHERE c.id IN ?1")
+    int deleteAllByIdIn(Collection<Long> ids);
+
+    // comments of any author on the tasks of a user, chunks of UserDeletionService
+    @Query("SELECT c.id FROM Comment c WHERE c.task.authorId = ?1 ORDER BY c.id")
+    List<Long> findIdsByTaskAuthorId(Long authorId, Limit limit);
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM Comment c WHERE c.taskId IN ?1")
+    int deleteAllByTaskIdIn(Collection<Long> taskIds);
 }
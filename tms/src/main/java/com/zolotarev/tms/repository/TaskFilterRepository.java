@@ -0,0 +1,12 @@
+package com.zolotarev.tms.repository;
+
+import com.zolotarev.tms.dto.TaskRow;
+import com.zolotarev.tms.entities.Task;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.List;
+
+public interface TaskFilterRepository {
+    // same flat rows as the other listings, ordered by id
+    List<TaskRow> findRows(Specification<Task> spec, int limit);
+}
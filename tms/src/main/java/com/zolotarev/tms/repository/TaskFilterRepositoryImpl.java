@@ -0,0 +1,43 @@
+package com.zolotarev.tms.repository;
+
+import com.zolotarev.tms.dto.TaskRow;
+import com.zolotarev.tms.entities.Task;
+import com.zolotarev.tms.entities.User;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Join;
+import jakarta.persistence.criteria.JoinType;
+import jakarta.persistence.criteria.Root;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+// JpaSpecificationExecutor can only return entities, so the specification is applied to
+// a criteria query with the same constructor projection as TaskRepository.ROW_SELECT
+public class TaskFilterRepositoryImpl implements TaskFilterRepository {
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<TaskRow> findRows(Specification<Task> spec, int limit) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<TaskRow> query = cb.createQuery(TaskRow.class);
+        Root<Task> t = query.from(Task.class);
+        Join<Task, User> a = t.join("author", JoinType.LEFT);
+        Join<Task, User> p = t.join("performer", JoinType.LEFT);
+        query.select(cb.construct(TaskRow.class,
+                        t.get("id"), t.get("title"), t.get("description"), t.get("status"), t.get("priority"),
+                        a.get("id"), a.get("firstName"), a.get("lastName"),
+                        p.get("id"), p.get("firstName"), p.get("lastName"),
+                        t.get("commentCount")))
+                .where(spec.toPredicate(t, query, cb))
+                .orderBy(cb.asc(t.get("id")));
+        return entityManager.createQuery(query)
+                .setMaxResults(limit)
+                .getResultList();
+    }
+}
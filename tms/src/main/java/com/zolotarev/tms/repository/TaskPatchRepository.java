@@ -0,0 +1,8 @@
+package com.zolotarev.tms.repository;
+
+import com.zolotarev.tms.dto.TaskPatchRequest;
+
+public interface TaskPatchRepository {
+    // returns the number of updated rows, 0 when there is no such task or it has another author
+    int patch(Long id, Long authorId, TaskPatchRequest patch);
+}
@@ -0,0 +1,47 @@
+package com.zolotarev.tms.repository;
+
+import com.zolotarev.tms.dto.TaskPatchRequest;
+import com.zolotarev.tms.entities.Task;
+import com.zolotarev.tms.entities.User;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaUpdate;
+import jakarta.persistence.criteria.Root;
+import org.springframework.transaction.annotation.Transactional;
+
+// One UPDATE ... WHERE id = ? AND author_id = ? setting only the given columns. Bumps the version
+// like the other bulk updates of tasks, nothing is loaded into the persistence context.
+public class TaskPatchRepositoryImpl implements TaskPatchRepository {
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    @Transactional
+    public int patch(Long id, Long authorId, TaskPatchRequest patch) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaUpdate<Task> update = cb.createCriteriaUpdate(Task.class);
+        Root<Task> t = update.from(Task.class);
+        if (patch.getTitle() != null) {
+            update.set(t.<String>get("title"), patch.getTitle());
+        }
+        if (patch.getDescription() != null) {
+            update.set(t.<String>get("description"), patch.getDescription());
+        }
+        if (patch.getStatus() != null) {
+            update.set(t.<Task.TaskStatus>get("status"), patch.getStatus());
+        }
+        if (patch.getPriority() != null) {
+            update.set(t.<Task.TaskPriority>get("priority"), patch.getPriority());
+        }
+        if (patch.isUnassignPerformer()) {
+            update.set(t.<User>get("performer"), cb.nullLiteral(User.class));
+        } else if (patch.getPerformerId() != null) {
+            // only the foreign key is written, a missing user fails the constraint
+            update.set(t.<User>get("performer"), entityManager.getReference(User.class, patch.getPerformerId()));
+        }
+        update.set(t.<Long>get("version"), cb.sum(t.<Long>get("version"), 1L));
+        update.where(cb.equal(t.get("id"), id), cb.equal(t.get("authorId"), authorId));
+        return entityManager.createQuery(update).executeUpdate();
+    }
+}
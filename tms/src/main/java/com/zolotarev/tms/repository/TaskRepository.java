@@ -1,30 +1,145 @@
 package com.zolotarev.tms.repository;
 
+import com.zolotarev.tms.dto.TaskRow;
+import com.zolotarev.tms.dto.TaskVersions;
 import com.zolotarev.tms.entities.Task;
 import com.zolotarev.tms.entities.User;
-import org.springframework.data.domain.Page;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
+// query methods get no transaction from Spring Data; read-only ones are routed to a replica
 @Repository
-public interface TaskRepository extends JpaRepository<Task, Long> {
-    Page<Task> findAll(Pageable pageable);
-    List<Task> findByAuthorId(Long authorId, Pageable pageable);
-    List<Task> findByPerformerId(Long performerId, Pageable pageable);
-    List<Task> findByStatus(Task.TaskStatus status, Pageable pageable);
+@Transactional(readOnly = true)
+public interface TaskRepository extends JpaRepository<Task, Long>, TaskFilterRepository, TaskPatchRepository {
+    // listings are read as flat rows in one statement: author and performer names are joined,
+    // no Task/User entity is loaded
+    String ROW_SELECT = "SELECT new com.zolotarev.tms.dto.TaskRow(t.id, t.title, t.description, t.status, t.priority, "
+            + "a.id, a.firstName, a.lastName, p.id, p.firstName, p.lastName, "
+            + "t.commentCount) "
+            + "FROM Task t LEFT JOIN t.author a LEFT JOIN t.performer p ";
 
-    @Query("SELECT t FROM Task t LEFT JOIN FETCH t.comments JOIN FETCH t.author LEFT JOIN FETCH t.performer WHERE t.id = ?1")
+    @Query(ROW_SELECT)
+    List<TaskRow> findRows(Pageable pageable);
+
+    @Query(ROW_SELECT + "WHERE t.authorId = ?1")
+    List<TaskRow> findRowsByAuthorId(Long authorId, Pageable pageable);
+
+    @Query(ROW_SELECT + "WHERE t.performerId = ?1")
+    List<TaskRow> findRowsByPerformerId(Long performerId, Pageable pageable);
+
+    @Query(ROW_SELECT + "WHERE t.status = ?1")
+    List<TaskRow> findRowsByStatus(Task.TaskStatus status, Pageable pageable);
+
+    // keyset (seek) variants: WHERE id > :after ORDER BY id, cost doesn't depend on page depth
+    @Query(ROW_SELECT + "WHERE t.id > ?1 ORDER BY t.id")
+    List<TaskRow> findRowsAfter(Long afterId, Limit limit);
+
+    @Query(ROW_SELECT + "WHERE t.authorId = ?1 AND t.id > ?2 ORDER BY t.id")
+    List<TaskRow> findRowsByAuthorIdAfter(Long authorId, Long afterId, Limit limit);
+
+    @Query(ROW_SELECT + "WHERE t.performerId = ?1 AND t.id > ?2 ORDER BY t.id")
+    List<TaskRow> findRowsByPerformerIdAfter(Long performerId, Long afterId, Limit limit);
+
+    @Query(ROW_SELECT + "WHERE t.status = ?1 AND t.id > ?2 ORDER BY t.id")
+    List<TaskRow> findRowsByStatusAfter(Task.TaskStatus status, Long afterId, Limit limit);
+
+    // forward-only cursor for exports, has to be consumed inside a transaction
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    @Query(ROW_SELECT + "ORDER BY t.id")
+    Stream<TaskRow> streamRows();
+
+    // sections of UserResponse, rows are (id, title)
+    @Query("SELECT t.id, t.title FROM Task t WHERE t.authorId = ?1 ORDER BY t.id")
+    List<Object[]> findTitlesByAuthorId(Long authorId);
+
+    @Query("SELECT t.id, t.title FROM Task t WHERE t.performerId = ?1 ORDER BY t.id")
+    List<Object[]> findTitlesByPerformerId(Long performerId);
+
+    @Query("SELECT t FROM Task t JOIN FETCH t.author LEFT JOIN FETCH t.performer WHERE t.id = ?1")
     Optional<Task> findTaskById(Long id);
 
+    // versions of the task, its author and performer (null without one): what TaskResponse is built from
+    @Query("SELECT new com.zolotarev.tms.dto.TaskVersions(t.version, a.version, p.version) "
+            + "FROM Task t JOIN t.author a LEFT JOIN t.performer p WHERE t.id = ?1")
+    Optional<TaskVersions> findVersionsById(Long id);
+
+    @Query("SELECT t FROM Task t JOIN FETCH t.author LEFT JOIN FETCH t.performer WHERE t.id IN ?1")
+    List<Task> findAllWithUsersByIdIn(Collection<Long> ids);
+
+    // values of /tasks/stream events, rows are (id, author id, performer id, status)
+    @Query("SELECT t.id, t.authorId, t.performerId, t.status FROM Task t WHERE t.id IN ?1")
+    List<Object[]> findStreamKeysByIdIn(Collection<Long> ids);
+
+    // bulk updates are VERSIONED: the task response changes, so does its ETag
     @Modifying
     @Transactional
-    @Query("UPDATE Task t SET t.performerId = NULL WHERE t.id IN ?1")
+    @Query("UPDATE VERSIONED Task t SET t.performerId = NULL WHERE t.id IN ?1")
     void clearPerformers(List<Long> idList);
+
+    // return the number of updated rows, 0 means there is no such task
+    @Modifying
+    @Transactional
+    @Query("UPDATE VERSIONED Task t SET t.commentCount = t.commentCount + 1 WHERE t.id = ?1")
+    int incrementCommentCount(Long id);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE VERSIONED Task t SET t.commentCount = t.commentCount - 1 WHERE t.id = ?1")
+    int decrementCommentCount(Long id);
+
+    @Query("SELECT t.id FROM Task t WHERE t.id IN ?1")
+    List<Long> findIdsByIdIn(Collection<Long> ids);
+
+    // chunks of UserDeletionService
+    @Query("SELECT t.id FROM Task t WHERE t.authorId = ?1 ORDER BY t.id")
+    List<Long> findIdsByAuthorId(Long authorId, Limit limit);
+
+    @Query("SELECT t.id FROM Task t WHERE t.performerId = ?1 ORDER BY t.id")
+    List<Long> findIdsByPerformerId(Long performerId, Limit limit);
+
+    @Query("SELECT t.id FROM Task t WHERE t.id IN ?1 AND t.authorId = ?2")
+    List<Long> findIdsByIdInAndAuthorId(Collection<Long> ids, Long authorId);
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM Task t WHERE t.id = ?1 AND t.authorId = ?2")
+    int deleteByIdAndAuthorId(Long id, Long authorId);
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM Task t WHERE t.id IN ?1")
+    int deleteAllByIdIn(Collection<Long> ids);
+
+    // counters of tasks that lost comments of several users in one statement
+    @Modifying
+    @Transactional
+    @Query("UPDATE VERSIONED Task t SET t.commentCount = (SELECT COUNT(c) FROM Comment c WHERE c.taskId = t.id) "
+            + "WHERE t.id IN ?1")
+    int recountComments(Collection<Long> ids);
+
+    @Query("SELECT MAX(t.id) FROM Task t")
+    Long findMaxId();
+
+    // recomputes counters for ids in (fromId, toId], only rows that drifted are written
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE tasks t SET comment_count = (SELECT COUNT(*) FROM comments c WHERE c.task_id = t.id), "
+            + "version = t.version + 1 "
+            + "WHERE t.id > ?1 AND t.id <= ?2 "
+            + "AND t.comment_count <> (SELECT COUNT(*) FROM comments c WHERE c.task_id = t.id)",
+            nativeQuery = true)
+    int repairCommentCounts(Long fromId, Long toId);
 }
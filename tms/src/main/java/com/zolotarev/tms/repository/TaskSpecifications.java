@@ -0,0 +1,60 @@
+package com.zolotarev.tms.repository;
+
+import com.zolotarev.tms.dto.TaskFilter;
+import com.zolotarev.tms.entities.Task;
+import org.springframework.data.jpa.domain.Specification;
+
+// Predicates of the task filter. Foreign keys are compared through the read-only
+// authorId/performerId columns, so no join is needed for filtering.
+public final class TaskSpecifications {
+    private TaskSpecifications() {
+    }
+
+    public static Specification<Task> of(TaskFilter filter, Long afterId) {
+        Specification<Task> spec = Specification.where(null);
+        if (filter.getStatus() != null) {
+            spec = spec.and(hasStatus(filter.getStatus()));
+        }
+        if (filter.getPriority() != null) {
+            spec = spec.and(hasPriority(filter.getPriority()));
+        }
+        if (filter.getAuthorId() != null) {
+            spec = spec.and(hasAuthor(filter.getAuthorId()));
+        }
+        if (filter.getPerformerId() != null) {
+            spec = spec.and(hasPerformer(filter.getPerformerId()));
+        }
+        if (filter.getTitlePrefix() != null && !filter.getTitlePrefix().isEmpty()) {
+            spec = spec.and(titleStartsWith(filter.getTitlePrefix()));
+        }
+        return spec.and(idAfter(afterId));
+    }
+
+    public static Specification<Task> hasStatus(Task.TaskStatus status) {
+        return (root, query, cb) -> cb.equal(root.get("status"), status);
+    }
+
+    public static Specification<Task> hasPriority(Task.TaskPriority priority) {
+        return (root, query, cb) -> cb.equal(root.get("priority"), priority);
+    }
+
+    public static Specification<Task> hasAuthor(Long authorId) {
+        return (root, query, cb) -> cb.equal(root.get("authorId"), authorId);
+    }
+
+    public static Specification<Task> hasPerformer(Long performerId) {
+        return (root, query, cb) -> cb.equal(root.get("performerId"), performerId);
+    }
+
+    // LIKE 'prefix%' is anchored, so it can be answered by a range scan of a btree index on title
+    public static Specification<Task> titleStartsWith(String prefix) {
+        String pattern = prefix.replace("\\", "\\\\")
+                .replace("%", "\\%")
+                .replace("_", "\\_") + "%";
+        return (root, query, cb) -> cb.like(root.get("title"), pattern, '\\');
+    }
+
+    public static Specification<Task> idAfter(Long afterId) {
+        return (root, query, cb) -> cb.greaterThan(root.get("id"), afterId);
+    }
+}
@@ -0,0 +1,39 @@
+package com.zolotarev.tms.repository;
+
+import com.zolotarev.tms.entities.UserDeletionJob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+@Transactional(readOnly = true)
+public interface UserDeletionJobRepository extends JpaRepository<UserDeletionJob, Long> {
+    Optional<UserDeletionJob> findFirstByUserIdAndStatusIn(Long userId, Collection<UserDeletionJob.Status> statuses);
+
+    // checked at login: read-write, so it goes to the primary, a replica may not have the job yet
+    @Transactional
+    boolean existsByUserIdAndStatusIn(Long userId, Collection<UserDeletionJob.Status> statuses);
+
+    @Query("SELECT j.id FROM UserDeletionJob j WHERE j.status IN ?1 ORDER BY j.id")
+    List<Long> findIdsByStatusIn(Collection<UserDeletionJob.Status> statuses);
+
+    // called in the transaction of the chunk, so the counters match what is committed
+    @Modifying
+    @Transactional
+    @Query("UPDATE UserDeletionJob j SET j.commentsDeleted = j.commentsDeleted + ?2, "
+            + "j.tasksDeleted = j.tasksDeleted + ?3, j.tasksUnassigned = j.tasksUnassigned + ?4, j.updatedAt = ?5 "
+            + "WHERE j.id = ?1")
+    void addProgress(Long id, long commentsDeleted, long tasksDeleted, long tasksUnassigned, Instant updatedAt);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE UserDeletionJob j SET j.status = ?2, j.error = ?3, j.updatedAt = ?4 WHERE j.id = ?1")
+    void updateStatus(Long id, UserDeletionJob.Status status, String error, Instant updatedAt);
+}
@@ -2,24 +2,73 @@ package com.zolotarev.tms.repository;
 
 import com.zolotarev.tms.entities.User;
 import org.springframework.cache.annotation.Cacheable;
-import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
+@Transactional(readOnly = true)
 public interface UserRepository extends JpaRepository<User, Long> {
-    @Cacheable(value = "users", key = "#email")
+    // Security lookups are read-write so they go to the primary: a lagging replica would hand out the
+    // password or token version from before a revocation, and the cache would keep it for the TTL.
+    @Cacheable(value = "users", key = "#email", unless = "#result == null")
+    @Transactional
     Optional<User> findByEmail(String email);
 
-    @Query("SELECT u FROM User u LEFT JOIN FETCH u.performerTasks WHERE u.id = ?1")
-    Optional<User> findByIdWithTasks(Long userId);
+    boolean existsByEmail(String email);
 
-    @EntityGraph(attributePaths = {"comments"})
-    Optional<User> findOneById(Long id);
+    @Query("SELECT u.id FROM User u WHERE u.id IN ?1")
+    List<Long> findExistingIds(Collection<Long> ids);
+
+    // hit on every authenticated request, so the value is cached per user
+    @Cacheable(value = "token_versions", key = "#id", unless = "#result == null")
+    @Transactional
+    @Query("SELECT u.tokenVersion FROM User u WHERE u.id = ?1")
+    Integer findTokenVersionById(Long id);
+
+    @Query("SELECT u.email FROM User u WHERE u.id = ?1")
+    Optional<String> findEmailById(Long id);
+
+    // tokens issued before are rejected from now on
+    @Modifying
+    @Transactional
+    @Query("UPDATE User u SET u.tokenVersion = u.tokenVersion + 1 WHERE u.id = ?1")
+    int incrementTokenVersion(Long id);
+
+    // the last statement of UserDeletionService, the user's rows are gone by then
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM User u WHERE u.id = ?1")
+    int deleteRowById(Long id);
 
     @Query("SELECT u FROM User u LEFT JOIN FETCH u.authorTasks WHERE u.id = ?1")
     Optional<User> findOneByIdWithTasks(Long id);
+
+    // Whole profile in one round trip: the USER row carries the totals, every other
+    // section is capped at ?2 rows. Columns: kind, id, first_name, last_name, email, role,
+    // authored_total, performed_total, comments_total, title, task_id
+    @Query(value = "(SELECT 'USER' AS kind, u.id AS id, u.first_name AS first_name, u.last_name AS last_name, "
+            + "u.email AS email, u.role AS role, "
+            + "(SELECT COUNT(*) FROM tasks t WHERE t.author_id = u.id) AS authored_total, "
+            + "(SELECT COUNT(*) FROM tasks t WHERE t.performer_id = u.id) AS performed_total, "
+            + "(SELECT COUNT(*) FROM comments c WHERE c.author_id = u.id) AS comments_total, "
+            + "CAST(NULL AS VARCHAR(255)) AS title, CAST(NULL AS BIGINT) AS task_id "
+            + "FROM user_table u WHERE u.id = ?1) "
+            + "UNION ALL "
+            + "(SELECT 'AUTHOR', t.id, NULL, NULL, NULL, NULL, NULL, NULL, NULL, t.title, NULL "
+            + "FROM tasks t WHERE t.author_id = ?1 ORDER BY t.id LIMIT ?2) "
+            + "UNION ALL "
+            + "(SELECT 'EXECUTOR', t.id, NULL, NULL, NULL, NULL, NULL, NULL, NULL, t.title, NULL "
+            + "FROM tasks t WHERE t.performer_id = ?1 ORDER BY t.id LIMIT ?2) "
+            + "UNION ALL "
+            + "(SELECT 'COMMENT', c.id, NULL, NULL, NULL, NULL, NULL, NULL, NULL, NULL, c.task_id "
+            + "FROM comments c WHERE c.author_id = ?1 ORDER BY c.id LIMIT ?2)",
+            nativeQuery = true)
+    List<Object[]> findProfileRows(Long id, int limit);
 }
@@ -0,0 +1,112 @@
+package com.zolotarev.tms.service;
+
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.zolotarev.tms.config.CacheConfig;
+import com.zolotarev.tms.dto.CacheStatsResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Service
+@RequiredArgsConstructor
+public class CacheService {
+    @Autowired
+    private final CacheManager cacheManager;
+
+    // UserResponse embeds authored/performed tasks and comments,
+    // so every task or comment change must drop the profiles it touches
+    public void evictUserResponses(Long... userIds) {
+        Cache cache = cacheManager.getCache(CacheConfig.USER_RESP);
+        if (cache == null) return;
+        for (Long id : userIds) {
+            if (id != null) {
+                evictNowAndAfterCommit(() -> cache.evict(id));
+            }
+        }
+    }
+
+    // for changes whose affected users are not known without reading the rows
+    public void evictAllUserResponses() {
+        Cache cache = cacheManager.getCache(CacheConfig.USER_RESP);
+        if (cache != null) {
+            evictNowAndAfterCommit(cache::clear);
+        }
+    }
+
+    // login and token checks of a deleted user
+    public void evictUser(Long userId, String email) {
+        Cache users = cacheManager.getCache(CacheConfig.USERS);
+        if (users != null && email != null) {
+            users.evict(email);
+        }
+        Cache tokenVersions = cacheManager.getCache(CacheConfig.TOKEN_VERSIONS);
+        if (tokenVersions != null) {
+            tokenVersions.evict(userId);
+        }
+    }
+
+    public void evictTask(Long taskId) {
+        Cache cache = cacheManager.getCache(CacheConfig.TASKS);
+        if (cache != null && taskId != null) {
+            evictNowAndAfterCommit(() -> cache.evict(taskId));
+        }
+    }
+
+    public void evictAllTasks() {
+        Cache cache = cacheManager.getCache(CacheConfig.TASKS);
+        if (cache != null) {
+            evictNowAndAfterCommit(cache::clear);
+        }
+    }
+
+    // the token check of a user whose token version is bumped in the current transaction
+    public void evictTokenVersion(Long userId) {
+        Cache cache = cacheManager.getCache(CacheConfig.TOKEN_VERSIONS);
+        if (cache != null && userId != null) {
+            evictNowAndAfterCommit(() -> cache.evict(userId));
+        }
+    }
+
+    // The change is not visible to other requests before the commit: one reading in between
+    // caches the old rows again, so the entry is dropped once more when the transaction commits.
+    // @CacheEvict on a @Transactional method evicts only once, possibly before the commit, so
+    // transactional writes evict through here instead
+    private static void evictNowAndAfterCommit(Runnable evict) {
+        evict.run();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    evict.run();
+                }
+            });
+        }
+    }
+
+    public List<CacheStatsResponse> getStats() {
+        List<CacheStatsResponse> result = new ArrayList<>();
+        for (String name : cacheManager.getCacheNames()) {
+            if (cacheManager.getCache(name) instanceof CaffeineCache caffeineCache) {
+                com.github.benmanes.caffeine.cache.Cache<Object, Object> nativeCache = caffeineCache.getNativeCache();
+                CacheStats stats = nativeCache.stats();
+                CacheStatsResponse resp = new CacheStatsResponse();
+                resp.setName(name);
+                resp.setSize(nativeCache.estimatedSize());
+                resp.setHits(stats.hitCount());
+                resp.setMisses(stats.missCount());
+                resp.setHitRate(stats.hitRate());
+                resp.setEvictions(stats.evictionCount());
+                result.add(resp);
+            }
+        }
+        return result;
+    }
+}
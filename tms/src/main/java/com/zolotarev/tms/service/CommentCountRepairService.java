@@ -0,0 +1,43 @@
+package com.zolotarev.tms.service;
+
+import com.zolotarev.tms.repository.TaskRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+// Task.commentCount is kept by CommentService, this job recomputes it from the comments table
+// in id ranges, each range in its own short transaction
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class CommentCountRepairService {
+    @Autowired
+    private final TaskRepository taskRepository;
+    @Autowired
+    private final TaskChangeFeed taskChangeFeed;
+
+    @Value("${application.comment-count.repair-chunk:10000}")
+    private long chunkSize;
+
+    @Scheduled(cron = "${application.comment-count.repair-cron:0 30 3 * * *}")
+    @CacheEvict(value = "tasks", allEntries = true)
+    public int repair() {
+        Long maxId = taskRepository.findMaxId();
+        if (maxId == null) {
+            return 0;
+        }
+        int fixed = 0;
+        for (long from = 0; from < maxId; from += chunkSize) {
+            fixed += taskRepository.repairCommentCounts(from, Math.min(from + chunkSize, maxId));
+        }
+        log.info("Comment counters repaired: " + fixed + " task(s) fixed");
+        if (fixed > 0) {
+            taskChangeFeed.resyncAll();
+        }
+        return fixed;
+    }
+}
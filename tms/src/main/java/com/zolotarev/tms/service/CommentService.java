@@ -2,20 +2,26 @@ package com.zolotarev.tms.service;
 
 import com.zolotarev.tms.dto.CommentRequest;
 import com.zolotarev.tms.dto.CommentResponse;
+import com.zolotarev.tms.dto.CursorPage;
+import com.zolotarev.tms.dto.TaskChangeEvent;
+import com.zolotarev.tms.dto.UserPrincipal;
 import com.zolotarev.tms.entities.Comment;
 import com.zolotarev.tms.entities.Task;
 import com.zolotarev.tms.entities.User;
 import com.zolotarev.tms.exception.NoPermissionException;
+import com.zolotarev.tms.exception.NotFoundException;
 import com.zolotarev.tms.repository.CommentRepository;
 import com.zolotarev.tms.repository.TaskRepository;
 import com.zolotarev.tms.repository.UserRepository;
 import lombok.RequiredArgsConstructor;
 import org.hibernate.Hibernate;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Pageable;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 import java.util.NoSuchElementException;
@@ -29,25 +35,41 @@ public class CommentService {
     private final CommentRepository commentRepository;
     @Autowired
     private final TaskRepository taskRepository;
+    @Autowired
+    private final CacheService cacheService;
+    @Autowired
+    private final SearchService searchService;
+    @Autowired
+    private final TaskChangeFeed taskChangeFeed;
 
+    @Transactional
     public Comment create(CommentRequest comment, Authentication auth) {
         Long userId = this.extractUserId(auth);
         User author = userRepository.getReferenceById(userId);
-        Task task = taskRepository.findTaskById(comment.getTaskId()).orElseThrow(
-                () -> new NoSuchElementException("There is no Task with taskId: " + comment.getTaskId())
-        );
+        // bumps the counter and proves the task exists in one statement
+        if (taskRepository.incrementCommentCount(comment.getTaskId()) == 0) {
+            throw new NoSuchElementException("There is no Task with taskId: " + comment.getTaskId());
+        }
+        Task task = taskRepository.getReferenceById(comment.getTaskId());
         Comment newComment = new Comment();
         newComment.setAuthor(author);
         newComment.setTask(task);
         newComment.setText(comment.getText());
         newComment.setAuthorId(userId);
-        return commentRepository.save(newComment);
+        Comment saved = commentRepository.save(newComment);
+        // task response shows comments count, author profile lists comments
+        cacheService.evictTask(comment.getTaskId());
+        cacheService.evictUserResponses(userId);
+        searchService.reindexTasksAfterCommit(List.of(comment.getTaskId()));
+        taskChangeFeed.publish(TaskChangeEvent.ofComment(TaskChangeEvent.Type.COMMENT_CREATED, saved.getId(),
+                comment.getTaskId()));
+        return saved;
     }
 
     private Long extractUserId(Authentication auth) {
-        User user = null;
+        UserPrincipal user = null;
         if (auth instanceof UsernamePasswordAuthenticationToken token) {
-            user = (User) token.getPrincipal();
+            user = (UserPrincipal) token.getPrincipal();
         }
         assert user != null;
         return user.getId();
@@ -68,7 +90,29 @@ public class CommentService {
         return commentList.stream().map(this::toResponse).toList();
     }
 
-    private CommentResponse toResponse(Comment comment){
+    public CursorPage<CommentResponse> findAllByTaskId(Long taskId, String after, int limit) {
+        int size = CursorPage.limit(limit);
+        List<Comment> commentList = commentRepository.findAllByTaskIdAndIdGreaterThanOrderByIdAsc(
+                taskId, CursorPage.decode(after), Limit.of(size + 1));
+        return CursorPage.of(commentList, size, Comment::getId, this::toResponse);
+    }
+
+    public CursorPage<CommentResponse> findAllByAuthorId(Long authorId, String after, int limit) {
+        int size = CursorPage.limit(limit);
+        List<Comment> commentList = commentRepository.findAllByAuthorIdAndIdGreaterThanOrderByIdAsc(
+                authorId, CursorPage.decode(after), Limit.of(size + 1));
+        return CursorPage.of(commentList, size, Comment::getId, this::toResponse);
+    }
+
+    public CursorPage<CommentResponse> findAll(String after, int limit) {
+        int size = CursorPage.limit(limit);
+        List<Comment> commentList = commentRepository.findByIdGreaterThanOrderByIdAsc(
+                CursorPage.decode(after), Limit.of(size + 1));
+        return CursorPage.of(commentList, size, Comment::getId, this::toResponse);
+    }
+
+    // package-private for MappingBenchmark in tms-benchmarks
+    CommentResponse toResponse(Comment comment){
         CommentResponse resp = new CommentResponse();
         resp.setId(comment.getId());
         resp.setContent(comment.getText());
@@ -91,32 +135,38 @@ public class CommentService {
         return resp;
     }
 
-    public Comment delete(Long id, Authentication auth) throws NoPermissionException {
-        Comment comment = commentRepository.findById(id)
-                .orElseThrow(() -> new NoSuchElementException("There is no comment with such id"));
-        Long authorId = comment.getAuthorId();
-
+    // the task id (for its counter, cache entry and search document) is read as a single column,
+    // the author check is part of the DELETE; no entity is loaded
+    @Transactional
+    public Long delete(Long id, Authentication auth) throws NoPermissionException {
+        Long taskId = commentRepository.findTaskIdById(id)
+                .orElseThrow(() -> new NotFoundException("There is no comment with such id"));
         Long userId = this.extractUserId(auth);
-        boolean isAuthor = userId.equals(authorId);
-        if( !isAuthor ){
+        if (commentRepository.deleteByIdAndAuthorId(id, userId) == 0) {
             throw new NoPermissionException("You have no permission to delete this comment: " + id);
         }
-        commentRepository.deleteById(id);
-
-        return comment;
+        taskRepository.decrementCommentCount(taskId);
+        cacheService.evictTask(taskId);
+        cacheService.evictUserResponses(userId);
+        searchService.reindexTasksAfterCommit(List.of(taskId));
+        taskChangeFeed.publish(TaskChangeEvent.ofComment(TaskChangeEvent.Type.COMMENT_DELETED, id, taskId));
+        return id;
     }
 
+    // only the text can change: one UPDATE with the author in its WHERE clause,
+    // the existence probe runs only when no row was updated, to tell not-found from forbidden
+    @Transactional
     public Long update(Long id, CommentRequest newComment, Authentication auth) throws NoPermissionException {
-        Comment comment = commentRepository.findById(id)
-                .orElseThrow(() -> new NoSuchElementException("There is no comment with such id"));
-        Long authorId = comment.getAuthorId();
         Long userId = this.extractUserId(auth);
-        boolean isAuthor = userId.equals(authorId);
-        if(!isAuthor) {
+        if (commentRepository.updateText(id, userId, newComment.getText()) == 0) {
+            if (!commentRepository.existsById(id)) {
+                throw new NotFoundException("There is no comment with such id");
+            }
             throw new NoPermissionException("You have no permission to update this comment: " + id);
         }
-        comment.setText(newComment.getText());
-
-        return commentRepository.save(comment).getId();
+        // the text is in the task document of the search index; no cached response shows it
+        searchService.reindexTasksOfCommentsAfterCommit(List.of(id));
+        taskChangeFeed.publish(TaskChangeEvent.ofComment(TaskChangeEvent.Type.COMMENT_UPDATED, id, null));
+        return id;
     }
 }
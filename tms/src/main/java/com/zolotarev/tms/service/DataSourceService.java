@@ -0,0 +1,56 @@
+package com.zolotarev.tms.service;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import com.zolotarev.tms.config.ReplicaProperties;
+import com.zolotarev.tms.config.RoutingDataSource;
+import com.zolotarev.tms.dto.DataSourceStatsResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Service
+@RequiredArgsConstructor
+public class DataSourceService {
+    @Autowired
+    private final RoutingDataSource routingDataSource;
+    @Autowired
+    private final ReplicaProperties replicaProperties;
+
+    @Scheduled(fixedDelayString = "${application.datasource.health-check-interval:5000}")
+    public void checkReplicas() {
+        routingDataSource.checkHealth(replicaProperties.getHealthCheckTimeout());
+    }
+
+    public List<DataSourceStatsResponse> getStats() {
+        List<DataSourceStatsResponse> result = new ArrayList<>();
+        result.add(toStats(routingDataSource.getPrimary()));
+        for (RoutingDataSource.Pool replica : routingDataSource.getReplicas()) {
+            result.add(toStats(replica));
+        }
+        return result;
+    }
+
+    private DataSourceStatsResponse toStats(RoutingDataSource.Pool pool) {
+        DataSourceStatsResponse resp = new DataSourceStatsResponse();
+        resp.setName(pool.getName());
+        resp.setHealthy(pool.isHealthy());
+        resp.setConnections(pool.getConnections().sum());
+        resp.setFailures(pool.getFailures().sum());
+        if (pool.getDataSource() instanceof HikariDataSource hikari) {
+            // null until the pool has started
+            HikariPoolMXBean mxBean = hikari.getHikariPoolMXBean();
+            if (mxBean != null) {
+                resp.setActive(mxBean.getActiveConnections());
+                resp.setIdle(mxBean.getIdleConnections());
+                resp.setTotal(mxBean.getTotalConnections());
+                resp.setAwaiting(mxBean.getThreadsAwaitingConnection());
+            }
+        }
+        return resp;
+    }
+}
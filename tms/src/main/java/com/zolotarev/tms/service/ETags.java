@@ -0,0 +1,69 @@
+package com.zolotarev.tms.service;
+
+import com.zolotarev.tms.dto.TaskVersions;
+import com.zolotarev.tms.dto.UserResponse;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.function.Predicate;
+
+// Strong ETags of GET /tasks/{id} and /users/{id} and the If-Match check of their updates
+final class ETags {
+    private ETags() {
+    }
+
+    static String of(TaskVersions versions) {
+        return "\"" + versions.getTask() + "." + versions.getAuthor() + "."
+                + (versions.getPerformer() != null ? versions.getPerformer() : "-") + "\"";
+    }
+
+    // the user version covers the user's own fields; the sections change with tasks and comments
+    // of other rows, they are digested: the first 64 bits of SHA-256, a changed profile doesn't
+    // get an old tag by chance. Cached with the response, see UserService.getById.
+    static String of(Long userVersion, UserResponse response) {
+        MessageDigest digest = sha256();
+        for (List<String> section : List.of(response.getAsAuthor(), response.getAsExecutor(), response.getComments())) {
+            update(digest, section);
+        }
+        byte[] hash = digest.digest();
+        return "\"" + userVersion + "." + HexFormat.of().formatHex(hash, 0, 8) + "\"";
+    }
+
+    // every list and item is preceded by its length, so moving an item to another section changes the digest
+    private static void update(MessageDigest digest, List<String> section) {
+        digest.update(ByteBuffer.allocate(4).putInt(section.size()).array());
+        for (String item : section) {
+            byte[] bytes = item.getBytes(StandardCharsets.UTF_8);
+            digest.update(ByteBuffer.allocate(4).putInt(bytes.length).array());
+            digest.update(bytes);
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform has it
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static String versionPrefix(Long userVersion) {
+        return "\"" + userVersion + ".";
+    }
+
+    // If-Match is * or a list of tags; weak tags never match (strong comparison)
+    static boolean matches(String ifMatch, Predicate<String> current) {
+        for (String tag : ifMatch.split(",")) {
+            String trimmed = tag.trim();
+            if (trimmed.equals("*") || (!trimmed.startsWith("W/") && current.test(trimmed))) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
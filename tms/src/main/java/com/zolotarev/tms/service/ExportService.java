@@ -0,0 +1,161 @@
+package com.zolotarev.tms.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.zolotarev.tms.dto.TaskRow;
+import com.zolotarev.tms.entities.Comment;
+import com.zolotarev.tms.repository.CommentRepository;
+import com.zolotarev.tms.repository.TaskRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+// Writes whole tables to the response row by row from a forward-only cursor,
+// heap usage doesn't depend on the number of exported rows
+@Service
+@RequiredArgsConstructor
+public class ExportService {
+    private static final int FLUSH_EVERY = 1000;
+
+    @Autowired
+    private final TaskRepository taskRepository;
+    @Autowired
+    private final CommentRepository commentRepository;
+    @Autowired
+    private final ObjectMapper objectMapper;
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    public enum Format {
+        NDJSON("application/x-ndjson"),
+        CSV("text/csv");
+
+        public final String contentType;
+
+        Format(String contentType) {
+            this.contentType = contentType;
+        }
+
+        public static Format of(String value) {
+            return Format.valueOf(value.toUpperCase());
+        }
+    }
+
+    @Transactional(readOnly = true)
+    public void exportTasks(Format format, OutputStream out) throws IOException {
+        // TaskRow is a projection, nothing is attached to the persistence context
+        try (Stream<TaskRow> rows = taskRepository.streamRows()) {
+            write(format, rows.map(this::toMap).iterator(), out);
+        }
+    }
+
+    @Transactional(readOnly = true)
+    public void exportComments(Format format, OutputStream out) throws IOException {
+        try (Stream<Comment> comments = commentRepository.streamAll()) {
+            write(format, comments.map(comment -> {
+                Map<String, Object> row = toMap(comment);
+                entityManager.detach(comment);
+                return row;
+            }).iterator(), out);
+        }
+    }
+
+    private Map<String, Object> toMap(TaskRow task) {
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("id", task.getId());
+        row.put("title", task.getTitle());
+        row.put("description", task.getDescription());
+        row.put("status", task.getStatus());
+        row.put("priority", task.getPriority());
+        row.put("authorId", task.getAuthorId());
+        row.put("performerId", task.getPerformerId());
+        row.put("commentCount", task.getCommentCount());
+        return row;
+    }
+
+    private Map<String, Object> toMap(Comment comment) {
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("id", comment.getId());
+        row.put("taskId", comment.getTaskId());
+        row.put("authorId", comment.getAuthorId());
+        row.put("text", comment.getText());
+        return row;
+    }
+
+    private void write(Format format, Iterator<Map<String, Object>> rows, OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        if (format == Format.NDJSON) {
+            writeNdjson(rows, writer);
+        } else {
+            writeCsv(rows, writer);
+        }
+        writer.flush();
+    }
+
+    private void writeNdjson(Iterator<Map<String, Object>> rows, Writer writer) throws IOException {
+        SequenceWriter sequence = objectMapper.writer().withRootValueSeparator("\n").writeValues(writer);
+        int count = 0;
+        while (rows.hasNext()) {
+            sequence.write(rows.next());
+            if (++count % FLUSH_EVERY == 0) {
+                sequence.flush();
+            }
+        }
+        // the separator goes between rows, the last one still ends its line; no rows, no output
+        if (count > 0) {
+            sequence.flush();
+            writer.write('\n');
+        }
+    }
+
+    private void writeCsv(Iterator<Map<String, Object>> rows, Writer writer) throws IOException {
+        int count = 0;
+        while (rows.hasNext()) {
+            Map<String, Object> row = rows.next();
+            if (count == 0) {
+                writer.write(String.join(",", row.keySet()));
+                writer.write('\n');
+            }
+            boolean first = true;
+            for (Object value : row.values()) {
+                if (!first) {
+                    writer.write(',');
+                }
+                writeCsvValue(value, writer);
+                first = false;
+            }
+            writer.write('\n');
+            if (++count % FLUSH_EVERY == 0) {
+                writer.flush();
+            }
+        }
+    }
+
+    private static void writeCsvValue(Object value, Writer writer) throws IOException {
+        if (value == null) {
+            return;
+        }
+        String text = value.toString();
+        if (text.indexOf(',') < 0 && text.indexOf('"') < 0 && text.indexOf('\n') < 0 && text.indexOf('\r') < 0) {
+            writer.write(text);
+            return;
+        }
+        writer.write('"');
+        writer.write(text.replace("\"", "\"\""));
+        writer.write('"');
+    }
+}
@@ -0,0 +1,372 @@
+package com.zolotarev.tms.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zolotarev.tms.dto.ImportReport;
+import com.zolotarev.tms.dto.UserPrincipal;
+import com.zolotarev.tms.entities.Task;
+import com.zolotarev.tms.entities.User;
+import com.zolotarev.tms.exception.NoPermissionException;
+import com.zolotarev.tms.repository.TaskRepository;
+import com.zolotarev.tms.repository.UserRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Reads an upload record by record and commits every chunk in its own transaction,
+// neither the file nor the imported entities are kept in memory
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class ImportService {
+    private static final int MAX_REPORTED_REJECTS = 1000;
+    private static final String PARSE_ERROR = "__parse_error";
+
+    @Autowired
+    private final TaskRepository taskRepository;
+    @Autowired
+    private final UserRepository userRepository;
+    @Autowired
+    private final ObjectMapper objectMapper;
+    @Autowired
+    private final TransactionTemplate transactionTemplate;
+    @Autowired
+    private final TaskChangeFeed taskChangeFeed;
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${application.import.chunk-size:1000}")
+    private int chunkSize;
+
+    @CacheEvict(value = "user_resp", allEntries = true)
+    public ImportReport importTasks(ExportService.Format format, InputStream in, Authentication auth) throws IOException {
+        UserPrincipal user = (UserPrincipal) auth.getPrincipal();
+        ImportContext context = new ImportContext(user);
+        Reader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        RecordReader records = format == ExportService.Format.CSV
+                ? new CsvRecordReader(reader)
+                : new NdjsonRecordReader(reader, objectMapper);
+
+        List<ParsedLine> chunk = new ArrayList<>(chunkSize);
+        Map<String, String> record;
+        while ((record = records.next()) != null) {
+            long line = records.line();
+            try {
+                chunk.add(new ParsedLine(line, this.toTask(record, context)));
+            } catch (IllegalArgumentException | NoPermissionException e) {
+                context.reject(line, e.getMessage());
+            }
+            if (chunk.size() == chunkSize) {
+                this.commitChunk(chunk, context);
+            }
+        }
+        if (!chunk.isEmpty()) {
+            this.commitChunk(chunk, context);
+        }
+        // imported tasks are not streamed one by one
+        if (context.report.getImported() > 0) {
+            taskChangeFeed.resyncAll();
+        }
+        return context.report;
+    }
+
+    private ParsedTask toTask(Map<String, String> record, ImportContext context) throws NoPermissionException {
+        if (record.containsKey(PARSE_ERROR)) {
+            throw new IllegalArgumentException(record.get(PARSE_ERROR));
+        }
+        String title = record.get("title");
+        if (title == null || title.isBlank()) {
+            throw new IllegalArgumentException("title is required");
+        }
+        ParsedTask task = new ParsedTask();
+        task.title = title;
+        task.description = record.get("description");
+        task.status = parseEnum(Task.TaskStatus.class, required(record, "status"), "status");
+        task.priority = parseEnum(Task.TaskPriority.class, required(record, "priority"), "priority");
+        task.authorId = parseId(record.get("authorId"), "authorId");
+        if (task.authorId == null) {
+            task.authorId = context.user.getId();
+        } else if (!task.authorId.equals(context.user.getId()) && context.user.getRole() != User.Role.ADMIN) {
+            throw new NoPermissionException("Only ADMIN can import tasks of other authors");
+        }
+        task.performerId = parseId(record.get("performerId"), "performerId");
+        return task;
+    }
+
+    private void commitChunk(List<ParsedLine> chunk, ImportContext context) {
+        context.resolveUsers(chunk);
+        List<ParsedLine> accepted = new ArrayList<>();
+        for (ParsedLine parsed : chunk) {
+            Long missing = context.firstMissingUser(parsed.task);
+            if (missing != null) {
+                context.reject(parsed.line, "There is no User with Id: " + missing);
+            } else {
+                accepted.add(parsed);
+            }
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                List<Task> tasks = new ArrayList<>(accepted.size());
+                for (ParsedLine parsed : accepted) {
+                    tasks.add(parsed.task.toEntity(userRepository));
+                }
+                taskRepository.saveAll(tasks);
+            });
+            context.report.setImported(context.report.getImported() + accepted.size());
+        } catch (RuntimeException e) {
+            // the cause may carry SQL and constraint names, it stays in the server log
+            log.warn("Task import: chunk {} rolled back", context.report.getChunks() + 1, e);
+            for (ParsedLine parsed : accepted) {
+                context.reject(parsed.line, "Chunk rolled back, the tasks were not imported");
+            }
+        } finally {
+            // with open-in-view the persistence context lives for the whole request
+            entityManager.clear();
+        }
+        context.report.setChunks(context.report.getChunks() + 1);
+        log.info("Task import: chunk {} done, imported {}, rejected {}", context.report.getChunks(),
+                context.report.getImported(), context.report.getRejected());
+        chunk.clear();
+    }
+
+    private static String required(Map<String, String> record, String field) {
+        String value = record.get(field);
+        if (value == null || value.isBlank()) {
+            throw new IllegalArgumentException(field + " is required");
+        }
+        return value.trim();
+    }
+
+    private static <E extends Enum<E>> E parseEnum(Class<E> type, String value, String field) {
+        try {
+            return Enum.valueOf(type, value);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(field + " must be one of " + Arrays.toString(type.getEnumConstants())
+                    + ": " + value);
+        }
+    }
+
+    private static Long parseId(String value, String field) {
+        if (value == null || value.isBlank() || value.equals("null")) {
+            return null;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(field + " is not a number: " + value);
+        }
+    }
+
+    private record ParsedLine(long line, ParsedTask task) {
+    }
+
+    private static class ParsedTask {
+        String title;
+        String description;
+        Task.TaskStatus status;
+        Task.TaskPriority priority;
+        Long authorId;
+        Long performerId;
+
+        Task toEntity(UserRepository userRepository) {
+            Task task = new Task();
+            task.setTitle(title);
+            task.setDescription(description);
+            task.setStatus(status);
+            task.setPriority(priority);
+            // references resolve to one proxy per user inside the chunk transaction
+            task.setAuthor(userRepository.getReferenceById(authorId));
+            if (performerId != null) {
+                task.setPerformer(userRepository.getReferenceById(performerId));
+            }
+            return task;
+        }
+    }
+
+    // per-import knowledge about referenced users, every id is looked up at most once
+    private class ImportContext {
+        final UserPrincipal user;
+        final ImportReport report = new ImportReport();
+        final Set<Long> existing = new HashSet<>();
+        final Set<Long> missing = new HashSet<>();
+
+        ImportContext(UserPrincipal user) {
+            this.user = user;
+            existing.add(user.getId());
+        }
+
+        void resolveUsers(List<ParsedLine> chunk) {
+            Set<Long> unknown = new HashSet<>();
+            for (ParsedLine parsed : chunk) {
+                for (Long id : new Long[]{parsed.task.authorId, parsed.task.performerId}) {
+                    if (id != null && !existing.contains(id) && !missing.contains(id)) {
+                        unknown.add(id);
+                    }
+                }
+            }
+            if (unknown.isEmpty()) return;
+            existing.addAll(userRepository.findExistingIds(unknown));
+            for (Long id : unknown) {
+                if (!existing.contains(id)) {
+                    missing.add(id);
+                }
+            }
+        }
+
+        Long firstMissingUser(ParsedTask task) {
+            if (missing.contains(task.authorId)) return task.authorId;
+            if (task.performerId != null && missing.contains(task.performerId)) return task.performerId;
+            return null;
+        }
+
+        void reject(long line, String error) {
+            report.setRejected(report.getRejected() + 1);
+            if (report.getRejectedLines().size() < MAX_REPORTED_REJECTS) {
+                report.getRejectedLines().add(new ImportReport.RejectedLine(line, error));
+            }
+        }
+    }
+
+    private interface RecordReader {
+        // null at the end of input
+        Map<String, String> next() throws IOException;
+
+        long line();
+    }
+
+    private static class NdjsonRecordReader implements RecordReader {
+        private final BufferedReader reader;
+        private final ObjectMapper objectMapper;
+        private long line;
+
+        NdjsonRecordReader(Reader reader, ObjectMapper objectMapper) {
+            this.reader = (BufferedReader) reader;
+            this.objectMapper = objectMapper;
+        }
+
+        @Override
+        public Map<String, String> next() throws IOException {
+            String text;
+            while ((text = reader.readLine()) != null) {
+                line++;
+                if (text.isBlank()) continue;
+                Map<String, String> record = new HashMap<>();
+                JsonNode node;
+                try {
+                    node = objectMapper.readTree(text);
+                } catch (JsonProcessingException e) {
+                    record.put(PARSE_ERROR, "Malformed json: " + e.getOriginalMessage());
+                    return record;
+                }
+                node.fields().forEachRemaining(field ->
+                        record.put(field.getKey(), field.getValue().isNull() ? null : field.getValue().asText()));
+                return record;
+            }
+            return null;
+        }
+
+        @Override
+        public long line() {
+            return line;
+        }
+    }
+
+    // RFC 4180 style: header row, quoted values may contain commas, quotes and line breaks
+    private static class CsvRecordReader implements RecordReader {
+        private final Reader reader;
+        private List<String> header;
+        private long line;
+        private long recordLine;
+        private boolean eof;
+
+        CsvRecordReader(Reader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public Map<String, String> next() throws IOException {
+            if (header == null) {
+                header = readRecord();
+                if (header == null) return null;
+            }
+            List<String> values;
+            do {
+                values = readRecord();
+                if (values == null) return null;
+            } while (values.size() == 1 && values.get(0).isEmpty());
+            Map<String, String> record = new HashMap<>();
+            for (int i = 0; i < header.size() && i < values.size(); i++) {
+                String value = values.get(i);
+                record.put(header.get(i).trim(), value.isEmpty() ? null : value);
+            }
+            return record;
+        }
+
+        @Override
+        public long line() {
+            return recordLine;
+        }
+
+        private List<String> readRecord() throws IOException {
+            if (eof) return null;
+            List<String> values = new ArrayList<>();
+            StringBuilder value = new StringBuilder();
+            boolean quoted = false;
+            recordLine = ++line;
+            int c;
+            while ((c = reader.read()) != -1) {
+                if (quoted) {
+                    if (c == '"') {
+                        reader.mark(1);
+                        int nextChar = reader.read();
+                        if (nextChar == '"') {
+                            value.append('"');
+                        } else {
+                            quoted = false;
+                            if (nextChar != -1) reader.reset();
+                        }
+                    } else {
+                        if (c == '\n') line++;
+                        value.append((char) c);
+                    }
+                } else if (c == '"') {
+                    quoted = true;
+                } else if (c == ',') {
+                    values.add(value.toString());
+                    value.setLength(0);
+                } else if (c == '\n') {
+                    values.add(value.toString());
+                    return values;
+                } else if (c != '\r') {
+                    value.append((char) c);
+                }
+            }
+            eof = true;
+            if (values.isEmpty() && value.isEmpty()) return null;
+            values.add(value.toString());
+            return values;
+        }
+    }
+}
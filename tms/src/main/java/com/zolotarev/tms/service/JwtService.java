@@ -1,50 +1,142 @@
 package com.zolotarev.tms.service;
 
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.zolotarev.tms.dto.TokenCacheStatsResponse;
+import com.zolotarev.tms.dto.UserPrincipal;
+import com.zolotarev.tms.entities.User;
 import io.jsonwebtoken.*;
 import io.jsonwebtoken.io.Decoders;
 import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import javax.crypto.SecretKey;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
 import java.util.Date;
+import java.util.concurrent.TimeUnit;
 
 @Service
 @Slf4j
+@RequiredArgsConstructor
 public class JwtService {
+    public static final String USER_ID_CLAIM = "uid";
+    public static final String ROLE_CLAIM = "role";
+    public static final String VERSION_CLAIM = "ver";
+
+    @Autowired
+    private final MeterRegistry meterRegistry;
+
     @Value("${application.jwt.secret}")
     private String secret;
+    @Value("${application.jwt.expiration}")
+    private long expiration;
+    @Value("${application.jwt.cache-size:10000}")
+    private long cacheSize;
+
+    // both are immutable and thread safe, built once instead of per token
+    private SecretKey signKey;
+    private JwtParser parser;
+
+    // sha-256 of the token -> claims that already passed signature verification
+    private Cache<String, Claims> verifiedTokens;
+    // registered once, recording a verification allocates nothing
+    private Timer verifications;
+
+    @PostConstruct
+    void init() {
+        byte[] keyBytes = Decoders.BASE64.decode(secret);
+        signKey = Keys.hmacShaKeyFor(keyBytes);
+        parser = Jwts.parser().verifyWith(signKey).build();
+        verifiedTokens = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfter(new TokenExpiry())
+                .recordStats()
+                .build();
+        // same tag keys as the Spring caches bound by Boot, prometheus drops meters whose keys differ
+        CaffeineCacheMetrics.monitor(meterRegistry, verifiedTokens, "jwt_tokens", "cache.manager", "jwtService",
+                "name", "jwt_tokens");
+        verifications = Timer.builder("tms.jwt.verification")
+                .description("Signature verification of tokens missing in the verified-token cache")
+                .register(meterRegistry);
+    }
 
     public String extractUserEmail(String token) {
         return extractAllClaims(token).getSubject();
     }
 
+    // returns null for tokens issued without identity claims
+    public UserPrincipal extractPrincipal(String token) {
+        Claims claims = extractAllClaims(token);
+        Long userId = claims.get(USER_ID_CLAIM, Long.class);
+        Integer version = claims.get(VERSION_CLAIM, Integer.class);
+        if (userId == null || version == null) {
+            return null;
+        }
+        String role = claims.get(ROLE_CLAIM, String.class);
+        return new UserPrincipal(userId,
+                claims.getSubject(),
+                role == null ? null : User.Role.valueOf(role),
+                version);
+    }
+
     private Claims extractAllClaims(String token) {
+        String digest = digest(token);
+        Claims cached = verifiedTokens.getIfPresent(digest);
+        if (cached != null) {
+            return cached;
+        }
+        Claims claims = verify(token);
+        verifiedTokens.put(digest, claims);
+        return claims;
+    }
+
+    private Claims verify(String token) {
+        long start = System.nanoTime();
         try {
-            return Jwts.parser()
-                    .verifyWith(getSignKey())
-                    .build()
-                    .parseSignedClaims(token)
-                    .getPayload();
+            return parser.parseSignedClaims(token).getPayload();
         } catch (JwtException e) {
             log.error("JWT exception " + e.getMessage());
             throw e;
+        } finally {
+            verifications.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
         }
     }
 
-    private SecretKey getSignKey() {
-        byte[] keyBytes = Decoders.BASE64.decode(secret);
-        return Keys.hmacShaKeyFor(keyBytes);
+    private static String digest(String token) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            byte[] hash = md.digest(token.getBytes(StandardCharsets.US_ASCII));
+            return Base64.getEncoder().encodeToString(hash);
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 is mandatory for every JRE
+            throw new IllegalStateException(e);
+        }
     }
 
-    public String generateToken(String email) {
+    public String generateToken(User user) {
+        long now = System.currentTimeMillis();
         return Jwts.builder()
-                .subject(email)
-                .issuedAt(new Date(System.currentTimeMillis()))
-                .expiration(new Date(System.currentTimeMillis() + 1000 * 60 * 60 * 24))
-                .signWith(getSignKey())
+                .subject(user.getEmail())
+                .claim(USER_ID_CLAIM, user.getId())
+                .claim(ROLE_CLAIM, user.getRole() == null ? null : user.getRole().name())
+                .claim(VERSION_CLAIM, user.getTokenVersion())
+                .issuedAt(new Date(now))
+                .expiration(new Date(now + expiration))
+                .signWith(signKey)
                 .compact();
     }
 
@@ -54,7 +146,7 @@ public class JwtService {
             subToken = token.substring(7);
         }
         try {
-            Jwts.parser().verifyWith(getSignKey()).build().parseSignedClaims(subToken);
+            extractAllClaims(subToken);
             return true;
         } catch (ExpiredJwtException e) {
             log.error("JWT expired, e");
@@ -65,4 +157,40 @@ public class JwtService {
         }
         return false;
     }
+
+    public TokenCacheStatsResponse getCacheStats() {
+        CacheStats stats = verifiedTokens.stats();
+        long count = verifications.count();
+        TokenCacheStatsResponse resp = new TokenCacheStatsResponse();
+        resp.setSize(verifiedTokens.estimatedSize());
+        resp.setHits(stats.hitCount());
+        resp.setMisses(stats.missCount());
+        resp.setHitRate(stats.hitRate());
+        resp.setVerifications(count);
+        resp.setAvgVerificationMicros(count == 0 ? 0 : verifications.totalTime(TimeUnit.MICROSECONDS) / count);
+        return resp;
+    }
+
+    // a cached token must disappear exactly when the token itself expires
+    private static class TokenExpiry implements Expiry<String, Claims> {
+        @Override
+        public long expireAfterCreate(String key, Claims claims, long currentTime) {
+            Date exp = claims.getExpiration();
+            if (exp == null) {
+                return 0;
+            }
+            long millis = exp.getTime() - System.currentTimeMillis();
+            return TimeUnit.MILLISECONDS.toNanos(Math.max(millis, 0));
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, Claims claims, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+
+        @Override
+        public long expireAfterRead(String key, Claims claims, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
 }
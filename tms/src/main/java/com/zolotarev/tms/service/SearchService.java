@@ -0,0 +1,139 @@
+package com.zolotarev.tms.service;
+
+import com.zolotarev.tms.dto.TaskSearchHit;
+import com.zolotarev.tms.dto.TaskSearchResponse;
+import com.zolotarev.tms.entities.Task;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.search.engine.search.query.SearchResult;
+import org.hibernate.search.mapper.orm.Search;
+import org.hibernate.search.mapper.orm.session.SearchSession;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+
+// Task documents are kept in the Lucene index by Hibernate Search on every committed
+// entity change; JPQL bulk statements and comment writes bypass it (see Task.comments),
+// so their callers purge or reindex explicitly
+@Service
+@Slf4j
+public class SearchService {
+    private static final int MAX_LIMIT = 100;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    private ThreadPoolTaskExecutor searchExecutor;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${application.search.reindex-threads:4}")
+    private int reindexThreads;
+
+    // waiting on the search executor; a burst of comments on one task reindexes it once
+    private final Set<Long> queued = ConcurrentHashMap.newKeySet();
+
+    @Transactional(readOnly = true)
+    public TaskSearchResponse search(String query, int page, int limit) {
+        int size = Math.max(1, Math.min(limit, MAX_LIMIT));
+        SearchSession session = Search.session(entityManager);
+        SearchResult<TaskSearchHit> result = session.search(Task.class)
+                .select(TaskSearchHit.class)
+                .where(f -> f.simpleQueryString()
+                        .field("title").boost(3.0f)
+                        .field("description")
+                        .field("comments.text")
+                        .matching(query))
+                .fetch(Math.max(page, 0) * size, size);
+        return new TaskSearchResponse(result.total().hitCount(), result.hits());
+    }
+
+    // must run inside the transaction of the bulk delete
+    public void purgeTasks(Collection<Long> ids) {
+        SearchSession session = Search.session(entityManager);
+        for (Long id : ids) {
+            session.indexingPlan().purge(Task.class, id, null);
+        }
+    }
+
+    // JPQL bulk updates and comment writes bypass the automatic indexing: the changed tasks are read again and
+    // indexed on the search executor after the commit, the index trails the database by that much
+    public void reindexTasksAfterCommit(Collection<Long> taskIds) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                List<Long> ids = taskIds.stream().filter(queued::add).toList();
+                if (ids.isEmpty()) {
+                    return;
+                }
+                boolean submitted = submit(() -> {
+                    // released before the load: a commit from now on queues the task again
+                    queued.removeAll(ids);
+                    index(entityManager.createQuery("SELECT t FROM Task t WHERE t.id IN :ids", Task.class)
+                            .setParameter("ids", ids)
+                            .getResultList());
+                });
+                if (!submitted) {
+                    queued.removeAll(ids);
+                }
+            }
+        });
+    }
+
+    // comment texts are part of the task document; the tasks are looked up in the writing transaction,
+    // so a burst of edits on one task queues it once like other comment writes
+    public void reindexTasksOfCommentsAfterCommit(Collection<Long> commentIds) {
+        reindexTasksAfterCommit(entityManager.createQuery(
+                        "SELECT DISTINCT c.taskId FROM Comment c WHERE c.id IN :ids", Long.class)
+                .setParameter("ids", commentIds)
+                .getResultList());
+    }
+
+    private boolean submit(Runnable load) {
+        try {
+            // a read-write transaction goes to the primary, a replica may not have the change yet
+            searchExecutor.execute(() -> transactionTemplate.executeWithoutResult(status -> load.run()));
+            return true;
+        } catch (RejectedExecutionException e) {
+            log.warn("Search executor is full, changed tasks stay stale in the index until a reindex");
+            return false;
+        }
+    }
+
+    private void index(List<Task> tasks) {
+        SearchSession session = Search.session(entityManager);
+        tasks.forEach(session.indexingPlan()::addOrUpdate);
+    }
+
+    // drops and rebuilds the whole index from the database, objects are loaded by parallel threads
+    public void reindex() {
+        log.info("Task search index rebuild started");
+        Search.mapping(entityManager.getEntityManagerFactory())
+                .scope(Task.class)
+                .massIndexer()
+                .threadsToLoadObjects(reindexThreads)
+                .batchSizeToLoadObjects(100)
+                .start()
+                .whenComplete((result, e) -> {
+                    if (e != null) {
+                        log.error("Task search index rebuild failed", e);
+                    } else {
+                        log.info("Task search index rebuild finished");
+                    }
+                });
+    }
+}
@@ -0,0 +1,329 @@
+package com.zolotarev.tms.service;
+
+import com.zolotarev.tms.dto.TaskChangeEvent;
+import com.zolotarev.tms.dto.TaskStreamFilter;
+import com.zolotarev.tms.entities.Task;
+import com.zolotarev.tms.exception.StreamLimitException;
+import com.zolotarev.tms.repository.CommentRepository;
+import com.zolotarev.tms.repository.TaskRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+// Pushes committed task and comment changes to the open /tasks/stream connections. The services
+// publish in their transaction, the events are handed over after the commit; the feed executor
+// looks up missing task values (one query per drained batch), numbers the events and offers them to
+// every matching subscriber. Subscribers are written by the stream executor, each from its own
+// bounded buffer, so a slow client delays nobody else: it gets a resync once its buffer is full.
+// A client that stops reading blocks the servlet write of its sender; once the write is older than
+// the send timeout the subscriber is dropped and another writer thread takes the blocked one's place.
+// Connections are async requests, an open stream holds no request thread. Nothing is published
+// while nobody is subscribed; no history is kept, a reconnecting client is sent a resync.
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class TaskChangeFeed {
+    private static final String RESYNC = "RESYNC";
+
+    @Autowired
+    private final TaskRepository taskRepository;
+    @Autowired
+    private final CommentRepository commentRepository;
+    @Autowired
+    private final TransactionTemplate transactionTemplate;
+    @Autowired
+    private final ThreadPoolTaskExecutor feedExecutor;
+    @Autowired
+    private final ThreadPoolTaskExecutor streamExecutor;
+    @Autowired
+    private final MeterRegistry meterRegistry;
+
+    @Value("${application.stream.buffer:256}")
+    private int bufferSize;
+    @Value("${application.stream.queue:10000}")
+    private int queueSize;
+    @Value("${application.stream.max-subscribers:5000}")
+    private int maxSubscribers;
+    @Value("${application.stream.timeout:30m}")
+    private Duration timeout;
+    @Value("${application.stream.send-timeout:5s}")
+    private Duration sendTimeout;
+    @Value("${application.stream.max-stalled:16}")
+    private int maxStalled;
+
+    private final Set<TaskStreamSubscriber> subscribers = ConcurrentHashMap.newKeySet();
+    // committed events waiting for the feed executor
+    private final ConcurrentLinkedQueue<TaskChangeEvent> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingSize = new AtomicInteger();
+    private final AtomicLong sequence = new AtomicLong();
+    // writers blocked on a dropped subscriber, until the container fails their write
+    private final AtomicInteger stalledWriters = new AtomicInteger();
+    private int streamThreads;
+    private Counter resyncs;
+    private Counter stalled;
+
+    @PostConstruct
+    void registerMeters() {
+        Gauge.builder("tms.stream.subscribers", subscribers, Set::size)
+                .description("Open /tasks/stream connections")
+                .register(meterRegistry);
+        resyncs = Counter.builder("tms.stream.resyncs")
+                .description("Events dropped for a slow /tasks/stream consumer, replaced by a resync")
+                .register(meterRegistry);
+        stalled = Counter.builder("tms.stream.stalled")
+                .description("/tasks/stream connections dropped because a write exceeded the send timeout")
+                .register(meterRegistry);
+        streamThreads = streamExecutor.getCorePoolSize();
+    }
+
+    // lastEventId is the Last-Event-ID header of a reconnecting EventSource
+    public SseEmitter subscribe(TaskStreamFilter filter, String lastEventId) {
+        if (subscribers.size() >= maxSubscribers) {
+            throw new StreamLimitException("Too many open task streams, retry later");
+        }
+        return subscribe(filter, lastEventId, new SseEmitter(timeout.toMillis()));
+    }
+
+    SseEmitter subscribe(TaskStreamFilter filter, String lastEventId, SseEmitter emitter) {
+        TaskStreamSubscriber subscriber = new TaskStreamSubscriber(filter, emitter, bufferSize, resyncs::increment);
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onTimeout(() -> subscribers.remove(subscriber));
+        emitter.onError(e -> subscribers.remove(subscriber));
+        subscribers.add(subscriber);
+        if (lastEventId != null && !lastEventId.equals(String.valueOf(sequence.get()))) {
+            schedule(subscriber, subscriber.requestResync());
+        } else {
+            // commits the response, the client sees the stream open before the first change
+            schedule(subscriber, subscriber.requestHeartbeat());
+        }
+        return emitter;
+    }
+
+    public void publish(TaskChangeEvent event) {
+        publish(List.of(event));
+    }
+
+    // sent after the commit of the current transaction, dropped on rollback
+    public void publish(Collection<TaskChangeEvent> events) {
+        if (subscribers.isEmpty() || events.isEmpty()) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            emit(events);
+            return;
+        }
+        List<TaskChangeEvent> committed = List.copyOf(events);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                emit(committed);
+            }
+        });
+    }
+
+    // for bulk changes that are not published one by one: imports, user deletion, counter repair
+    public void resyncAll() {
+        subscribers.forEach(subscriber -> schedule(subscriber, subscriber.requestResync()));
+    }
+
+    // committed events, offered to the subscribers on the feed executor
+    public void emit(Collection<TaskChangeEvent> events) {
+        pending.addAll(events);
+        if (pendingSize.addAndGet(events.size()) > queueSize) {
+            // the feed executor is behind, every client reloads instead
+            int dropped = drainPending().size();
+            log.warn("Task change feed is {} events behind, streams are resynced", dropped);
+            resyncAll();
+            return;
+        }
+        try {
+            feedExecutor.execute(this::dispatch);
+        } catch (RejectedExecutionException e) {
+            // a dispatch is queued already, it takes these events too
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${application.stream.heartbeat:15000}")
+    public void heartbeat() {
+        subscribers.forEach(subscriber -> schedule(subscriber, subscriber.requestHeartbeat()));
+    }
+
+    // the emitter can't be completed here: it is locked by the blocked write, the writer completes it on return
+    @Scheduled(fixedDelayString = "${application.stream.send-check:1000}")
+    public void dropStalled() {
+        long now = System.nanoTime();
+        for (TaskStreamSubscriber subscriber : subscribers) {
+            if (subscriber.dropIfStalled(now, sendTimeout.toNanos())) {
+                subscribers.remove(subscriber);
+                stalled.increment();
+                log.warn("Task stream write is blocked for more than {}, the subscriber is dropped", sendTimeout);
+                resizeStreamExecutor(stalledWriters.incrementAndGet());
+            }
+        }
+    }
+
+    // one extra writer per blocked one, up to max-stalled
+    private synchronized void resizeStreamExecutor(int blocked) {
+        int size = streamThreads + Math.min(blocked, maxStalled);
+        if (size > streamExecutor.getMaxPoolSize()) {
+            streamExecutor.setMaxPoolSize(size);
+            streamExecutor.setCorePoolSize(size);
+        } else {
+            streamExecutor.setCorePoolSize(size);
+            streamExecutor.setMaxPoolSize(size);
+        }
+    }
+
+    private List<TaskChangeEvent> drainPending() {
+        List<TaskChangeEvent> events = new ArrayList<>();
+        TaskChangeEvent event;
+        while ((event = pending.poll()) != null) {
+            events.add(event);
+        }
+        pendingSize.addAndGet(-events.size());
+        return events;
+    }
+
+    private void dispatch() {
+        List<TaskChangeEvent> events = drainPending();
+        if (events.isEmpty() || subscribers.isEmpty()) {
+            return;
+        }
+        try {
+            resolve(events);
+        } catch (RuntimeException e) {
+            // unresolved events reach every filtered stream, nothing is lost
+            log.warn("Task values of stream events are not available: {}", e.toString());
+        }
+        for (TaskChangeEvent event : events) {
+            event.setId(sequence.incrementAndGet());
+            for (TaskStreamSubscriber subscriber : subscribers) {
+                if (subscriber.filter.matches(event)) {
+                    schedule(subscriber, subscriber.offer(event));
+                }
+            }
+        }
+    }
+
+    // values the publishing service didn't have, read on the primary: a replica may lag behind the commit
+    private void resolve(List<TaskChangeEvent> events) {
+        List<TaskChangeEvent> byTask = events.stream()
+                .filter(e -> !e.isResolved() && e.getType() != TaskChangeEvent.Type.TASK_DELETED && e.getTaskId() != null)
+                .toList();
+        List<TaskChangeEvent> byComment = events.stream()
+                .filter(e -> !e.isResolved() && e.getTaskId() == null && e.getCommentId() != null)
+                .toList();
+        if (byTask.isEmpty() && byComment.isEmpty()) {
+            return;
+        }
+        Map<Long, Object[]> tasks = new HashMap<>();
+        Map<Long, Object[]> comments = new HashMap<>();
+        transactionTemplate.executeWithoutResult(status -> {
+            if (!byTask.isEmpty()) {
+                taskRepository.findStreamKeysByIdIn(byTask.stream().map(TaskChangeEvent::getTaskId)
+                        .collect(Collectors.toSet())).forEach(row -> tasks.put((Long) row[0], row));
+            }
+            if (!byComment.isEmpty()) {
+                commentRepository.findStreamKeysByIdIn(byComment.stream().map(TaskChangeEvent::getCommentId)
+                        .collect(Collectors.toSet())).forEach(row -> comments.put((Long) row[0], row));
+            }
+        });
+        // rows are (id, author id, performer id, status) and (id, task id, author id, performer id, status)
+        for (TaskChangeEvent event : byTask) {
+            Object[] row = tasks.get(event.getTaskId());
+            if (row != null) {
+                apply(event, (Long) row[1], (Long) row[2], (Task.TaskStatus) row[3]);
+            }
+        }
+        for (TaskChangeEvent event : byComment) {
+            Object[] row = comments.get(event.getCommentId());
+            if (row != null) {
+                event.setTaskId((Long) row[1]);
+                apply(event, (Long) row[2], (Long) row[3], (Task.TaskStatus) row[4]);
+            }
+        }
+    }
+
+    private static void apply(TaskChangeEvent event, Long authorId, Long performerId, Task.TaskStatus status) {
+        event.setAuthorId(authorId);
+        event.setPerformerId(performerId);
+        event.setStatus(status);
+        event.setResolved(true);
+    }
+
+    private void schedule(TaskStreamSubscriber subscriber, boolean idle) {
+        if (idle) {
+            streamExecutor.execute(() -> send(subscriber));
+        }
+    }
+
+    // until the buffer is empty; a failed write means the client is gone
+    private void send(TaskStreamSubscriber subscriber) {
+        TaskStreamSubscriber.Batch batch;
+        while ((batch = subscriber.poll()) != null) {
+            boolean failed = false;
+            subscriber.startWrite(System.nanoTime());
+            try {
+                write(subscriber.emitter, batch);
+            } catch (IOException | IllegalStateException e) {
+                failed = true;
+            }
+            if (!subscriber.endWrite()) {
+                // dropped by dropStalled, a replacement writer was started meanwhile
+                resizeStreamExecutor(stalledWriters.decrementAndGet());
+                subscriber.emitter.complete();
+                return;
+            }
+            if (failed) {
+                subscribers.remove(subscriber);
+                return;
+            }
+        }
+    }
+
+    private void write(SseEmitter emitter, TaskStreamSubscriber.Batch batch) throws IOException {
+        if (batch.resync()) {
+            emitter.send(SseEmitter.event()
+                    .id(String.valueOf(sequence.get()))
+                    .name(RESYNC)
+                    .data("Changes were missed, reload the tasks"));
+        }
+        for (TaskChangeEvent event : batch.events()) {
+            emitter.send(SseEmitter.event()
+                    .id(String.valueOf(event.getId()))
+                    .name(event.getType().name())
+                    .data(event, MediaType.APPLICATION_JSON));
+        }
+        if (batch.heartbeat() && !batch.resync() && batch.events().isEmpty()) {
+            emitter.send(SseEmitter.event().comment("heartbeat"));
+        }
+    }
+}
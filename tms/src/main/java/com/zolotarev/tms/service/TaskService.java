@@ -1,25 +1,50 @@
 package com.zolotarev.tms.service;
 
+import com.zolotarev.tms.dto.BatchItemResult;
+import com.zolotarev.tms.dto.CursorPage;
+import com.zolotarev.tms.dto.TaskChangeEvent;
+import com.zolotarev.tms.dto.TaskFilter;
+import com.zolotarev.tms.dto.TaskPatchRequest;
 import com.zolotarev.tms.dto.TaskRequest;
 import com.zolotarev.tms.dto.TaskResponse;
+import com.zolotarev.tms.dto.TaskRow;
+import com.zolotarev.tms.dto.TaskUpdateRequest;
+import com.zolotarev.tms.dto.TaskVersions;
+import com.zolotarev.tms.dto.UserPrincipal;
 import com.zolotarev.tms.entities.Comment;
 import com.zolotarev.tms.entities.Task;
 import com.zolotarev.tms.entities.User;
+import com.zolotarev.tms.exception.BadRequestException;
 import com.zolotarev.tms.exception.NoPermissionException;
+import com.zolotarev.tms.exception.NotFoundException;
+import com.zolotarev.tms.exception.PreconditionFailedException;
 import com.zolotarev.tms.repository.CommentRepository;
 import com.zolotarev.tms.repository.TaskRepository;
+import com.zolotarev.tms.repository.TaskSpecifications;
 import com.zolotarev.tms.repository.UserRepository;
 import lombok.RequiredArgsConstructor;
 import org.hibernate.Hibernate;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Pageable;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
 
 @Service
 @RequiredArgsConstructor
@@ -30,7 +55,17 @@ public class TaskService {
     private UserRepository userRepository;
     @Autowired
     private CommentRepository commentRepository;
+    @Autowired
+    private CacheService cacheService;
+    @Autowired
+    private SearchService searchService;
+    @Autowired
+    private TaskChangeFeed taskChangeFeed;
 
+    @Value("${application.batch.max-size:500}")
+    private int maxBatchSize;
+
+    @Transactional
     public Task create(TaskRequest task, Authentication auth) {
         Long userId = this.extractUserId(auth);
         User author = userRepository.getReferenceById(userId);
@@ -44,7 +79,10 @@ public class TaskService {
         }
         newTask.setAuthor(author);
 
-        return taskRepository.save(newTask);
+        Task saved = taskRepository.save(newTask);
+        cacheService.evictUserResponses(userId, performerId);
+        taskChangeFeed.publish(TaskChangeEvent.of(TaskChangeEvent.Type.TASK_CREATED, saved));
+        return saved;
     }
 
     private Task toTask(TaskRequest taskRequest) {
@@ -57,7 +95,8 @@ public class TaskService {
         return task;
     }
 
-    private TaskResponse toResponse(Task task){
+    // package-private for MappingBenchmark in tms-benchmarks
+    TaskResponse toResponse(Task task){
         TaskResponse response = new TaskResponse();
         response.setId(task.getId());
         response.setTitle(task.getTitle());
@@ -85,43 +124,95 @@ public class TaskService {
         } else {
             response.setPerformer("id: " + task.getPerformerId());
         }
-        if (Hibernate.isInitialized(task.getComments())) {
-            response.setComments(task.getComments().size() + " comment(s)");
+        response.setComments(task.getCommentCount() + " comment(s)");
+        return response;
+    }
+
+    TaskResponse toResponse(TaskRow row){
+        TaskResponse response = new TaskResponse();
+        response.setId(row.getId());
+        response.setTitle(row.getTitle());
+        response.setDescription(row.getDescription());
+        response.setStatus(row.getStatus());
+        response.setPriority(row.getPriority());
+        response.setAuthor("id: " + row.getAuthorId()
+                + ", name: " + row.getAuthorFirstName()
+                + ", surname: " + row.getAuthorLastName());
+        if (row.getPerformerId() != null) {
+            response.setPerformer("id: " + row.getPerformerId()
+                    + ", name: " + row.getPerformerFirstName()
+                    + ", surname: " + row.getPerformerLastName());
         } else {
-            response.setComments("undefined");
+            response.setPerformer("no executor assigned");
         }
+        response.setComments(row.getCommentCount() + " comment(s)");
         return response;
     }
 
     private Long extractUserId(Authentication auth){
-        User user = null;
+        UserPrincipal user = null;
         if (auth instanceof UsernamePasswordAuthenticationToken token) {
-            user = (User) token.getPrincipal();
+            user = (UserPrincipal) token.getPrincipal();
         }
         assert user != null;
         return user.getId();
     }
 
     public List<TaskResponse> findAll(Pageable pageable) {
-        List<Task> tasks = taskRepository.findAll(pageable).getContent();
-        return tasks.stream().map(this::toResponse).toList();
+        List<TaskRow> rows = taskRepository.findRows(pageable);
+        return rows.stream().map(this::toResponse).toList();
     }
 
     public List<TaskResponse> findByAuthorId(Long authorId, Pageable pageable) {
-        List<Task> tasks = taskRepository.findByAuthorId(authorId, pageable);
-        return tasks.stream().map(this::toResponse).toList();
+        List<TaskRow> rows = taskRepository.findRowsByAuthorId(authorId, pageable);
+        return rows.stream().map(this::toResponse).toList();
     }
 
     public List<TaskResponse> findByPerformerId(Long performerId, Pageable pageable) {
-        List<Task> tasks = taskRepository.findByPerformerId(performerId, pageable);
-        return tasks.stream().map(this::toResponse).toList();
+        List<TaskRow> rows = taskRepository.findRowsByPerformerId(performerId, pageable);
+        return rows.stream().map(this::toResponse).toList();
     }
 
     public List<TaskResponse> findByStatus(Task.TaskStatus status, Pageable pageable) {
-        List<Task> tasks = taskRepository.findByStatus(status, pageable);
-        return  tasks.stream().map(this::toResponse).toList();
+        List<TaskRow> rows = taskRepository.findRowsByStatus(status, pageable);
+        return rows.stream().map(this::toResponse).toList();
     }
 
+    public CursorPage<TaskResponse> findAll(String after, int limit) {
+        int size = CursorPage.limit(limit);
+        List<TaskRow> rows = taskRepository.findRowsAfter(CursorPage.decode(after), Limit.of(size + 1));
+        return CursorPage.of(rows, size, TaskRow::getId, this::toResponse);
+    }
+
+    public CursorPage<TaskResponse> findByAuthorId(Long authorId, String after, int limit) {
+        int size = CursorPage.limit(limit);
+        List<TaskRow> rows = taskRepository.findRowsByAuthorIdAfter(
+                authorId, CursorPage.decode(after), Limit.of(size + 1));
+        return CursorPage.of(rows, size, TaskRow::getId, this::toResponse);
+    }
+
+    public CursorPage<TaskResponse> findByPerformerId(Long performerId, String after, int limit) {
+        int size = CursorPage.limit(limit);
+        List<TaskRow> rows = taskRepository.findRowsByPerformerIdAfter(
+                performerId, CursorPage.decode(after), Limit.of(size + 1));
+        return CursorPage.of(rows, size, TaskRow::getId, this::toResponse);
+    }
+
+    public CursorPage<TaskResponse> findByStatus(Task.TaskStatus status, String after, int limit) {
+        int size = CursorPage.limit(limit);
+        List<TaskRow> rows = taskRepository.findRowsByStatusAfter(
+                status, CursorPage.decode(after), Limit.of(size + 1));
+        return CursorPage.of(rows, size, TaskRow::getId, this::toResponse);
+    }
+
+    public CursorPage<TaskResponse> filter(TaskFilter filter, String after, int limit) {
+        int size = CursorPage.limit(limit);
+        List<TaskRow> rows = taskRepository.findRows(
+                TaskSpecifications.of(filter, CursorPage.decode(after)), size + 1);
+        return CursorPage.of(rows, size, TaskRow::getId, this::toResponse);
+    }
+
+    @Cacheable(value = "tasks", key = "#id")
     public TaskResponse findTaskById(Long id) {
         Optional<Task> task = taskRepository.findTaskById(id);
         if (!task.isPresent()) {
@@ -130,7 +221,17 @@ public class TaskService {
         return this.toResponse(task.get());
     }
 
-    public Long update(Long id, TaskRequest newTask, Authentication auth) throws NoPermissionException {
+    // conditional GET: primary key lookups of the task and its users, nothing is loaded or mapped
+    public String findTaskEtag(Long id) {
+        return taskRepository.findVersionsById(id).map(ETags::of)
+                .orElseThrow(() -> new NoSuchElementException("There is no task with Id: " + id));
+    }
+
+    // ifMatch is the If-Match header or null; the version checked here is also the one
+    // the UPDATE is conditioned on, a concurrent change fails the commit with an optimistic lock error
+    @Transactional
+    public Long update(Long id, TaskRequest newTask, String ifMatch, Authentication auth)
+            throws NoPermissionException, PreconditionFailedException {
         Task task = taskRepository.findById(id)
                 .orElseThrow(() -> new NoSuchElementException("There is no task with id: " + id));
         Long authorId = task.getAuthorId();
@@ -139,24 +240,247 @@ public class TaskService {
         if (!isAuthor) {
             throw new NoPermissionException("You have no permission to update this task: " + id);
         }
-        task.setPerformerId(newTask.getPerformerId());
+        String etag = ETags.of(new TaskVersions(task.getVersion(), task.getAuthor().getVersion(),
+                task.getPerformer() != null ? task.getPerformer().getVersion() : null));
+        if (ifMatch != null && !ETags.matches(ifMatch, etag::equals)) {
+            throw new PreconditionFailedException("Task " + id + " has been changed, current ETag: " + etag);
+        }
+        cacheService.evictTask(id);
+        cacheService.evictUserResponses(authorId, task.getPerformerId(), newTask.getPerformerId());
+        boolean performerChanged = !Objects.equals(task.getPerformerId(), newTask.getPerformerId());
+        boolean statusChanged = task.getStatus() != newTask.getStatus();
+        // performer_id is written through the association, like in updateBatch
+        if (performerChanged) {
+            Long performerId = newTask.getPerformerId();
+            task.setPerformer(performerId == null ? null : userRepository.findById(performerId).orElseThrow(
+                    () -> new NoSuchElementException("There is no User with Id: " + performerId)));
+            task.setPerformerId(performerId);
+        }
         task.setTitle(newTask.getTitle());
         task.setDescription(newTask.getDescription());
         task.setStatus(newTask.getStatus());
         task.setPriority(newTask.getPriority());
+        taskChangeFeed.publish(updated(task, performerChanged, statusChanged));
         return id;
     }
 
-    public Task delete(Long id, Authentication auth) throws NoPermissionException {
-        Task task = taskRepository.findById(id)
-                .orElseThrow(() -> new NoSuchElementException("There is no task with id: " + id));
-        Long authorId = task.getAuthorId();
+    // One UPDATE with the author in its WHERE clause instead of read, check and dirty checking;
+    // the existence probe runs only when no row was updated, to tell not-found from forbidden
+    @Transactional
+    public Long patch(Long id, TaskPatchRequest patch, Authentication auth) throws NoPermissionException {
+        if (!patch.hasChanges()) {
+            throw new BadRequestException("Nothing to update in task: " + id);
+        }
+        if (patch.getTitle() != null && patch.getTitle().isBlank()) {
+            throw new BadRequestException("Title must not be blank");
+        }
         Long userId = this.extractUserId(auth);
-        boolean isAuthor = userId.equals(authorId);
-        if (!isAuthor) {
+        int updated;
+        try {
+            updated = taskRepository.patch(id, userId, patch);
+        } catch (DataIntegrityViolationException e) {
+            // the performer's foreign key is the only constraint a missing row can break
+            if (patch.getPerformerId() == null) {
+                throw e;
+            }
+            throw new NoSuchElementException("There is no User with Id: " + patch.getPerformerId());
+        }
+        if (updated == 0) {
+            if (!taskRepository.existsById(id)) {
+                throw new NotFoundException("There is no task with id: " + id);
+            }
+            throw new NoPermissionException("You have no permission to update this task: " + id);
+        }
+        cacheService.evictTask(id);
+        // the previous performer is not known without reading the row
+        if (patch.changesProfiles()) {
+            cacheService.evictAllUserResponses();
+        }
+        if (patch.changesIndexedFields()) {
+            searchService.reindexTasksAfterCommit(List.of(id));
+        }
+        TaskChangeEvent event = TaskChangeEvent.ofTask(TaskChangeEvent.Type.TASK_UPDATED, id, userId);
+        event.setPerformerChanged(patch.getPerformerId() != null || patch.isUnassignPerformer());
+        event.setStatusChanged(patch.getStatus() != null);
+        taskChangeFeed.publish(event);
+        return id;
+    }
+
+    // Two set-based statements, the comments and then the task, both with the author check in the WHERE
+    // clause; nothing is loaded, so the cost doesn't grow with the number of comments. The existence
+    // probe runs only when nothing was deleted. Comments of any user go away, so all profiles are dropped.
+    @Transactional
+    public Long delete(Long id, Authentication auth) throws NoPermissionException {
+        Long userId = this.extractUserId(auth);
+        cacheService.evictTask(id);
+        cacheService.evictAllUserResponses();
+        commentRepository.deleteAllByTaskIdAndTaskAuthorId(id, userId);
+        if (taskRepository.deleteByIdAndAuthorId(id, userId) == 0) {
+            if (!taskRepository.existsById(id)) {
+                throw new NotFoundException("There is no task with id: " + id);
+            }
             throw new NoPermissionException("You have no permission to delete this task: " + id);
         }
-        taskRepository.deleteById(id);
-        return task;
+        searchService.purgeTasks(List.of(id));
+        taskChangeFeed.publish(TaskChangeEvent.ofTask(TaskChangeEvent.Type.TASK_DELETED, id, userId));
+        return id;
+    }
+
+    // Batch operations run in one transaction; with sequence ids and hibernate.jdbc.batch_size
+    // the inserts/updates go to the driver as JDBC batches. Items that fail validation or the
+    // permission check are reported in the result and skipped, the rest are applied.
+    @Transactional
+    public List<BatchItemResult> createBatch(List<TaskRequest> requests, Authentication auth) {
+        checkBatchSize(requests);
+        cacheService.evictAllUserResponses();
+        Long userId = this.extractUserId(auth);
+        User author = userRepository.getReferenceById(userId);
+        Map<Long, User> performers = this.findUsers(requests.stream().map(TaskRequest::getPerformerId));
+
+        BatchItemResult[] results = new BatchItemResult[requests.size()];
+        List<Task> tasks = new ArrayList<>();
+        List<Integer> positions = new ArrayList<>();
+        for (int i = 0; i < requests.size(); i++) {
+            TaskRequest request = requests.get(i);
+            String error = this.validate(request, performers);
+            if (error != null) {
+                results[i] = BatchItemResult.failed(i, null, error);
+                continue;
+            }
+            Task task = this.toTask(request);
+            if (request.getPerformerId() != null) {
+                task.setPerformer(performers.get(request.getPerformerId()));
+            }
+            task.setAuthor(author);
+            tasks.add(task);
+            positions.add(i);
+        }
+        taskRepository.saveAll(tasks);
+        for (int j = 0; j < tasks.size(); j++) {
+            results[positions.get(j)] = BatchItemResult.ok(positions.get(j), tasks.get(j).getId());
+        }
+        taskChangeFeed.publish(tasks.stream()
+                .map(task -> TaskChangeEvent.of(TaskChangeEvent.Type.TASK_CREATED, task))
+                .toList());
+        return List.of(results);
+    }
+
+    @Transactional
+    public List<BatchItemResult> updateBatch(List<TaskUpdateRequest> requests, Authentication auth) {
+        checkBatchSize(requests);
+        cacheService.evictAllTasks();
+        cacheService.evictAllUserResponses();
+        Long userId = this.extractUserId(auth);
+        Map<Long, Task> tasks = new HashMap<>();
+        for (Task task : taskRepository.findAllWithUsersByIdIn(
+                requests.stream().map(TaskUpdateRequest::getId).filter(Objects::nonNull).toList())) {
+            tasks.put(task.getId(), task);
+        }
+        Map<Long, User> performers = this.findUsers(requests.stream()
+                .map(TaskUpdateRequest::getTask)
+                .filter(Objects::nonNull)
+                .map(TaskRequest::getPerformerId));
+
+        List<BatchItemResult> results = new ArrayList<>();
+        List<TaskChangeEvent> events = new ArrayList<>();
+        for (int i = 0; i < requests.size(); i++) {
+            Long id = requests.get(i).getId();
+            TaskRequest newTask = requests.get(i).getTask();
+            Task task = tasks.get(id);
+            if (task == null) {
+                results.add(BatchItemResult.failed(i, id, "There is no task with id: " + id));
+                continue;
+            }
+            if (!userId.equals(task.getAuthorId())) {
+                results.add(BatchItemResult.failed(i, id, "You have no permission to update this task: " + id));
+                continue;
+            }
+            String error = this.validate(newTask, performers);
+            if (error != null) {
+                results.add(BatchItemResult.failed(i, id, error));
+                continue;
+            }
+            boolean statusChanged = task.getStatus() != newTask.getStatus();
+            task.setTitle(newTask.getTitle());
+            task.setDescription(newTask.getDescription());
+            task.setStatus(newTask.getStatus());
+            task.setPriority(newTask.getPriority());
+            // only touch the association on change, clearing it loads the old performer's tasks
+            boolean performerChanged = !Objects.equals(task.getPerformerId(), newTask.getPerformerId());
+            if (performerChanged) {
+                task.setPerformer(newTask.getPerformerId() == null ? null : performers.get(newTask.getPerformerId()));
+                task.setPerformerId(newTask.getPerformerId());
+            }
+            events.add(updated(task, performerChanged, statusChanged));
+            results.add(BatchItemResult.ok(i, id));
+        }
+        taskChangeFeed.publish(events);
+        // dirty tasks are flushed on commit as one ordered JDBC batch of UPDATEs
+        return results;
+    }
+
+    @Transactional
+    public List<BatchItemResult> deleteBatch(List<Long> ids, Authentication auth) {
+        checkBatchSize(ids);
+        cacheService.evictAllTasks();
+        cacheService.evictAllUserResponses();
+        Long userId = this.extractUserId(auth);
+        Set<Long> existing = new HashSet<>(taskRepository.findIdsByIdIn(ids));
+        Set<Long> owned = new HashSet<>(taskRepository.findIdsByIdInAndAuthorId(ids, userId));
+
+        List<BatchItemResult> results = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i++) {
+            Long id = ids.get(i);
+            if (!existing.contains(id)) {
+                results.add(BatchItemResult.failed(i, id, "There is no task with id: " + id));
+            } else if (!owned.contains(id)) {
+                results.add(BatchItemResult.failed(i, id, "You have no permission to delete this task: " + id));
+            } else {
+                results.add(BatchItemResult.ok(i, id));
+            }
+        }
+        if (!owned.isEmpty()) {
+            commentRepository.deleteAllByTaskIdIn(owned);
+            taskRepository.deleteAllByIdIn(owned);
+            searchService.purgeTasks(owned);
+            taskChangeFeed.publish(owned.stream()
+                    .map(id -> TaskChangeEvent.ofTask(TaskChangeEvent.Type.TASK_DELETED, id, userId))
+                    .toList());
+        }
+        return results;
+    }
+
+    private static TaskChangeEvent updated(Task task, boolean performerChanged, boolean statusChanged) {
+        TaskChangeEvent event = TaskChangeEvent.of(TaskChangeEvent.Type.TASK_UPDATED, task);
+        event.setPerformerChanged(performerChanged);
+        event.setStatusChanged(statusChanged);
+        return event;
+    }
+
+    private void checkBatchSize(List<?> items) {
+        if (items.size() > maxBatchSize) {
+            throw new BadRequestException("Batch is too large: " + items.size() + ", max: " + maxBatchSize);
+        }
+    }
+
+    private Map<Long, User> findUsers(Stream<Long> ids) {
+        Map<Long, User> users = new HashMap<>();
+        for (User user : userRepository.findAllById(ids.filter(Objects::nonNull).distinct().toList())) {
+            users.put(user.getId(), user);
+        }
+        return users;
+    }
+
+    private String validate(TaskRequest request, Map<Long, User> performers) {
+        if (request == null) {
+            return "Task is missing";
+        }
+        if (request.getTitle() == null || request.getStatus() == null || request.getPriority() == null) {
+            return "Title, status and priority are required";
+        }
+        if (request.getPerformerId() != null && !performers.containsKey(request.getPerformerId())) {
+            return "There is no User with Id: " + request.getPerformerId();
+        }
+        return null;
     }
 }
@@ -0,0 +1,106 @@
+package com.zolotarev.tms.service;
+
+import com.zolotarev.tms.dto.TaskChangeEvent;
+import com.zolotarev.tms.dto.TaskStreamFilter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+// One open /tasks/stream: its filter, its emitter and a bounded buffer of events not sent yet.
+// A full buffer is dropped as a whole and a resync is sent instead: the consumer can't keep up and
+// reloads the lists, instead of the server holding an unbounded backlog for it. At most one sender
+// works on a subscriber at a time, the offer that finds it idle reports that it has to be scheduled.
+// A write that doesn't return within the send timeout drops the subscriber, see TaskChangeFeed.
+class TaskStreamSubscriber {
+    final TaskStreamFilter filter;
+    final SseEmitter emitter;
+    private final int capacity;
+    private final Runnable onOverflow;
+
+    private final ArrayDeque<TaskChangeEvent> buffer = new ArrayDeque<>();
+    private boolean resync;
+    private boolean heartbeat;
+    private boolean scheduled;
+    // System.nanoTime() when the write in progress started, 0 while no write is in progress
+    private long writeStarted;
+    private boolean dropped;
+
+    TaskStreamSubscriber(TaskStreamFilter filter, SseEmitter emitter, int capacity, Runnable onOverflow) {
+        this.filter = filter;
+        this.emitter = emitter;
+        this.capacity = capacity;
+        this.onOverflow = onOverflow;
+    }
+
+    // true when the caller has to schedule a sender
+    synchronized boolean offer(TaskChangeEvent event) {
+        if (resync) {
+            // the client reloads anyway, later events are covered by it
+            return schedule();
+        }
+        if (buffer.size() == capacity) {
+            buffer.clear();
+            resync = true;
+            onOverflow.run();
+        } else {
+            buffer.add(event);
+        }
+        return schedule();
+    }
+
+    synchronized boolean requestResync() {
+        buffer.clear();
+        resync = true;
+        return schedule();
+    }
+
+    synchronized boolean requestHeartbeat() {
+        heartbeat = true;
+        return schedule();
+    }
+
+    // what is to be sent now; null when there is nothing, the sender stops and the next offer schedules one
+    synchronized Batch poll() {
+        if (dropped || !resync && !heartbeat && buffer.isEmpty()) {
+            scheduled = false;
+            return null;
+        }
+        Batch batch = new Batch(resync, new ArrayList<>(buffer), heartbeat);
+        buffer.clear();
+        resync = false;
+        heartbeat = false;
+        return batch;
+    }
+
+    synchronized void startWrite(long now) {
+        writeStarted = now;
+    }
+
+    // false when the subscriber was dropped while writing
+    synchronized boolean endWrite() {
+        writeStarted = 0;
+        return !dropped;
+    }
+
+    // true once, when the write in progress has taken longer than the timeout
+    synchronized boolean dropIfStalled(long now, long timeoutNanos) {
+        if (dropped || writeStarted == 0 || now - writeStarted < timeoutNanos) {
+            return false;
+        }
+        dropped = true;
+        return true;
+    }
+
+    private boolean schedule() {
+        if (scheduled) {
+            return false;
+        }
+        scheduled = true;
+        return true;
+    }
+
+    record Batch(boolean resync, List<TaskChangeEvent> events, boolean heartbeat) {
+    }
+}
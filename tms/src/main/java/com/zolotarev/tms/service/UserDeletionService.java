@@ -0,0 +1,257 @@
+package com.zolotarev.tms.service;
+
+import com.zolotarev.tms.dto.UserDeletionJobResponse;
+import com.zolotarev.tms.entities.UserDeletionJob;
+import com.zolotarev.tms.repository.CommentRepository;
+import com.zolotarev.tms.repository.TaskRepository;
+import com.zolotarev.tms.repository.UserDeletionJobRepository;
+import com.zolotarev.tms.repository.UserRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+// Deletes a user in the background. The user's comments, the tasks it performs, the comments on the
+// tasks it authored and then those tasks go in chunks of chunk-size rows; a chunk is a few set-based
+// statements in its own short transaction, followed by a pause, so locks are held briefly and the
+// requests of other users are not starved. Every chunk deletes only what is still there: a job
+// interrupted by a restart is run again from the beginning. The user can't log in while a job is active.
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class UserDeletionService {
+    private static final List<UserDeletionJob.Status> ACTIVE =
+            List.of(UserDeletionJob.Status.PENDING, UserDeletionJob.Status.RUNNING);
+    // the user can still get tasks assigned while the chunks run, the final DELETE then fails
+    private static final int ATTEMPTS = 3;
+    private static final int MAX_ERROR = 1000;
+
+    @Autowired
+    private final UserDeletionJobRepository jobRepository;
+    @Autowired
+    private final UserRepository userRepository;
+    @Autowired
+    private final TaskRepository taskRepository;
+    @Autowired
+    private final CommentRepository commentRepository;
+    @Autowired
+    private final SearchService searchService;
+    @Autowired
+    private final CacheService cacheService;
+    @Autowired
+    private final TransactionTemplate transactionTemplate;
+    @Autowired
+    private final ThreadPoolTaskExecutor userDeletionExecutor;
+    @Autowired
+    private final TaskChangeFeed taskChangeFeed;
+
+    @Value("${application.user-deletion.chunk-size:1000}")
+    private int chunkSize;
+
+    @Value("${application.user-deletion.pause:20ms}")
+    private Duration pause;
+
+    // Only ADMIN user can do this. The user is logged out at once, the data goes later;
+    // a second request for the same user returns the unfinished job.
+    @Transactional
+    public UserDeletionJobResponse enqueue(Long userId) {
+        UserDeletionJob active = jobRepository.findFirstByUserIdAndStatusIn(userId, ACTIVE).orElse(null);
+        if (active != null) {
+            return toResponse(active);
+        }
+        if (userRepository.incrementTokenVersion(userId) == 0) {
+            throw new NoSuchElementException("There is no User with id: " + userId);
+        }
+        cacheService.evictTokenVersion(userId);
+
+        UserDeletionJob job = new UserDeletionJob();
+        job.setUserId(userId);
+        job.setStatus(UserDeletionJob.Status.PENDING);
+        job.setCreatedAt(Instant.now());
+        job.setUpdatedAt(job.getCreatedAt());
+        UserDeletionJob saved = jobRepository.save(job);
+
+        Long jobId = saved.getId();
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                // a request in between may have cached the old token version again
+                cacheService.evictUser(userId, null);
+                userDeletionExecutor.execute(() -> run(jobId));
+            }
+        });
+        return toResponse(saved);
+    }
+
+    // its tokens were revoked by enqueue, login must not issue new ones
+    public boolean isBeingDeleted(Long userId) {
+        return jobRepository.existsByUserIdAndStatusIn(userId, ACTIVE);
+    }
+
+    public UserDeletionJobResponse getJob(Long id) {
+        return jobRepository.findById(id)
+                .map(this::toResponse)
+                .orElseThrow(() -> new NoSuchElementException("There is no user deletion job with id: " + id));
+    }
+
+    // jobs of a stopped instance
+    @EventListener(ApplicationReadyEvent.class)
+    public void resume() {
+        List<Long> ids = jobRepository.findIdsByStatusIn(ACTIVE);
+        if (!ids.isEmpty()) {
+            log.info("Resuming user deletion jobs " + ids);
+        }
+        ids.forEach(id -> userDeletionExecutor.execute(() -> run(id)));
+    }
+
+    public void run(Long jobId) {
+        // read-write, so it goes to the primary: a replica may not have the job yet
+        UserDeletionJob job = transactionTemplate.execute(status -> jobRepository.findById(jobId).orElse(null));
+        if (job == null || !ACTIVE.contains(job.getStatus())) {
+            return;
+        }
+        Long userId = job.getUserId();
+        jobRepository.updateStatus(jobId, UserDeletionJob.Status.RUNNING, null, Instant.now());
+        try {
+            String email = transactionTemplate.execute(status -> userRepository.findEmailById(userId).orElse(null));
+            for (int attempt = 1; ; attempt++) {
+                deleteData(jobId, userId);
+                try {
+                    transactionTemplate.executeWithoutResult(status -> userRepository.deleteRowById(userId));
+                    break;
+                } catch (DataIntegrityViolationException e) {
+                    if (attempt == ATTEMPTS) {
+                        throw e;
+                    }
+                    log.info("User {} got new rows while being deleted, attempt {}", userId, attempt + 1);
+                }
+            }
+            cacheService.evictUser(userId, email);
+            // profiles of other users list the deleted tasks and comments, task streams show them
+            cacheService.evictAllUserResponses();
+            taskChangeFeed.resyncAll();
+            jobRepository.updateStatus(jobId, UserDeletionJob.Status.DONE, null, Instant.now());
+            log.info("User {} deleted by job {}", userId, jobId);
+        } catch (Interrupted e) {
+            // shutdown: the job stays RUNNING and is resumed on the next start
+            log.info("User deletion job {} interrupted", jobId);
+        } catch (RuntimeException e) {
+            log.error("User deletion job " + jobId + " failed", e);
+            String error = e.toString();
+            jobRepository.updateStatus(jobId, UserDeletionJob.Status.FAILED,
+                    error.length() <= MAX_ERROR ? error : error.substring(0, MAX_ERROR), Instant.now());
+        }
+    }
+
+    // comments first: they reference both tasks and users
+    private void deleteData(Long jobId, Long userId) {
+        while (chunk(() -> deleteComments(jobId, userId)) > 0) {
+            pause();
+        }
+        while (chunk(() -> unassignTasks(jobId, userId)) > 0) {
+            pause();
+        }
+        while (chunk(() -> deleteTaskComments(jobId, userId)) > 0) {
+            pause();
+        }
+        while (chunk(() -> deleteTasks(jobId, userId)) > 0) {
+            pause();
+        }
+    }
+
+    private int chunk(Supplier<Integer> statements) {
+        Integer rows = transactionTemplate.execute(status -> statements.get());
+        return rows == null ? 0 : rows;
+    }
+
+    // comments of the user on any task; the counters and search documents of those tasks follow
+    private int deleteComments(Long jobId, Long userId) {
+        List<Object[]> rows = commentRepository.findTaskIdsByAuthorId(userId, Limit.of(chunkSize));
+        if (rows.isEmpty()) {
+            return 0;
+        }
+        List<Long> ids = rows.stream().map(r -> (Long) r[0]).toList();
+        Set<Long> taskIds = rows.stream().map(r -> (Long) r[1]).collect(Collectors.toSet());
+        commentRepository.deleteAllByIdIn(ids);
+        taskRepository.recountComments(taskIds);
+        searchService.reindexTasksAfterCommit(taskIds);
+        taskIds.forEach(cacheService::evictTask);
+        jobRepository.addProgress(jobId, ids.size(), 0, 0, Instant.now());
+        return ids.size();
+    }
+
+    private int unassignTasks(Long jobId, Long userId) {
+        List<Long> ids = taskRepository.findIdsByPerformerId(userId, Limit.of(chunkSize));
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        taskRepository.clearPerformers(ids);
+        ids.forEach(cacheService::evictTask);
+        jobRepository.addProgress(jobId, 0, 0, ids.size(), Instant.now());
+        return ids.size();
+    }
+
+    // comments of other users on the tasks of the user; the tasks go next, their counters are not recounted
+    private int deleteTaskComments(Long jobId, Long userId) {
+        List<Long> ids = commentRepository.findIdsByTaskAuthorId(userId, Limit.of(chunkSize));
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        commentRepository.deleteAllByIdIn(ids);
+        jobRepository.addProgress(jobId, ids.size(), 0, 0, Instant.now());
+        return ids.size();
+    }
+
+    private int deleteTasks(Long jobId, Long userId) {
+        List<Long> ids = taskRepository.findIdsByAuthorId(userId, Limit.of(chunkSize));
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        // only comments added since the previous phase are left, a few rows at most
+        int comments = commentRepository.deleteAllByTaskIdIn(ids);
+        taskRepository.deleteAllByIdIn(ids);
+        searchService.purgeTasks(ids);
+        ids.forEach(cacheService::evictTask);
+        jobRepository.addProgress(jobId, comments, ids.size(), 0, Instant.now());
+        return ids.size();
+    }
+
+    private void pause() {
+        if (pause.isZero()) {
+            return;
+        }
+        try {
+            Thread.sleep(pause.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new Interrupted();
+        }
+    }
+
+    private UserDeletionJobResponse toResponse(UserDeletionJob job) {
+        return new UserDeletionJobResponse(job.getId(), job.getUserId(), job.getStatus(), job.getCommentsDeleted(),
+                job.getTasksDeleted(), job.getTasksUnassigned(), job.getError(), job.getCreatedAt(),
+                job.getUpdatedAt());
+    }
+
+    private static class Interrupted extends RuntimeException {
+    }
+}
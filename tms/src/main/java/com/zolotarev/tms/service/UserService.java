@@ -2,34 +2,53 @@ package com.zolotarev.tms.service;
 
 import com.zolotarev.tms.dto.AuthRequest;
 import com.zolotarev.tms.dto.AuthResponse;
+import com.zolotarev.tms.dto.CursorPage;
+import com.zolotarev.tms.dto.UserPrincipal;
+import com.zolotarev.tms.dto.UserProfileResponse;
 import com.zolotarev.tms.dto.UserRequest;
 import com.zolotarev.tms.dto.UserResponse;
 import com.zolotarev.tms.entities.Comment;
 import com.zolotarev.tms.entities.Task;
 import com.zolotarev.tms.entities.User;
+import com.zolotarev.tms.exception.PreconditionFailedException;
+import com.zolotarev.tms.repository.CommentRepository;
 import com.zolotarev.tms.repository.TaskRepository;
 import com.zolotarev.tms.repository.UserRepository;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.hibernate.Hibernate;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.cache.annotation.Caching;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.DisabledException;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.NoSuchElementException;
-import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
+@Slf4j
 @Service
 @RequiredArgsConstructor
 public class UserService {
+    private static final int MAX_PROFILE_PREVIEW = 50;
+
     @Autowired
     private final UserRepository userRepository;
     @Autowired
@@ -40,14 +59,39 @@ public class UserService {
     private final TaskRepository taskRepository;
     @Autowired
     private final AuthenticationManager authenticationManager;
+    @Autowired
+    private final CommentRepository commentRepository;
+    @Autowired
+    private final ThreadPoolTaskExecutor profileExecutor;
+    @Autowired
+    private final TransactionTemplate transactionTemplate;
+    @Autowired
+    private final UserDeletionService userDeletionService;
+
+    @Value("${application.profile.timeout:2s}")
+    private Duration profileTimeout;
 
+    // read-only, with the section timeout as transaction timeout: Spring sets the remaining time as the
+    // jakarta.persistence.query.timeout hint of every query, a late section's statement is cancelled
+    // by the driver instead of holding its connection after the response gave up on it
+    private TransactionTemplate sectionTransaction;
+
+    @PostConstruct
+    void initSectionTransaction() {
+        DefaultTransactionDefinition definition = new DefaultTransactionDefinition();
+        definition.setReadOnly(true);
+        // JDBC query timeouts are whole seconds
+        definition.setTimeout((int) Math.max(1, (profileTimeout.toMillis() + 999) / 1000));
+        sectionTransaction = new TransactionTemplate(transactionTemplate.getTransactionManager(), definition);
+    }
+
+    // drop a stale entry left by a previously deleted user with the same email
+    @CacheEvict(value = "users", key = "#userRequest.email")
     public Long register(UserRequest userRequest){
 
         User user = this.mapDtoToUser(userRequest);
 
-        Optional<User> userFromDb = userRepository.findByEmail(userRequest.getEmail());
-
-        if (userFromDb.isPresent()) {
+        if (userRepository.existsByEmail(userRequest.getEmail())) {
             throw new NoSuchElementException("Email already registered: " + userRequest.getEmail());
         }
 
@@ -66,7 +110,11 @@ public class UserService {
 
 
         User user = (User) auth.getPrincipal();
-        String token = jwtService.generateToken(user.getEmail());
+        // checked after the password, so the answer tells nothing to others
+        if (userDeletionService.isBeingDeleted(user.getId())) {
+            throw new DisabledException("User is being deleted: " + user.getEmail());
+        }
+        String token = jwtService.generateToken(user);
         return new AuthResponse(user.getId(), token);
     }
 
@@ -75,17 +123,102 @@ public class UserService {
         return userList.stream().map(this::toResponse).toList();
     }
 
-    // we need 3 calls here to avoid MultipleBagFetchException and Cartesian product
-    @Cacheable(value = "user_resp", key = "#id")
-    @Transactional(readOnly = true)
+    // The three sections are independent reads, they run concurrently on the profile executor,
+    // each in its own read-only transaction with a timeout, so the response takes as long as the slowest one.
+    // A section that fails or times out is listed in unavailable instead of failing the request;
+    // such partial responses are not cached.
+    @Cacheable(value = "user_resp", key = "#id", unless = "!#result.unavailable.isEmpty()")
     public UserResponse getById(Long id){
-        // all 3 users merged in one persistence context
-        User user = userRepository.findByIdWithTasks(id).orElseThrow(
-                () -> new NoSuchElementException("There is no User with id: " + id)
-        );
-        User user1 = userRepository.findOneById(id).orElseThrow();
-        User user2 = userRepository.findOneByIdWithTasks(id).orElseThrow();
-        return this.toResponse(user2);
+        CompletableFuture<List<String>> asAuthor = loadSection(() -> taskRepository.findTitlesByAuthorId(id)
+                .stream().map(r -> "id: " + r[0] + ", title: " + r[1]).toList());
+        CompletableFuture<List<String>> asExecutor = loadSection(() -> taskRepository.findTitlesByPerformerId(id)
+                .stream().map(r -> "id: " + r[0] + ", title: " + r[1]).toList());
+        CompletableFuture<List<String>> comments = loadSection(() -> commentRepository.findTaskIdsByAuthorId(id)
+                .stream().map(r -> "id: " + r[0] + ", to task: " + r[1]).toList());
+
+        User user = userRepository.findById(id).orElseThrow(() -> {
+            List.of(asAuthor, asExecutor, comments).forEach(section -> section.cancel(false));
+            return new NoSuchElementException("There is no User with id: " + id);
+        });
+        UserResponse resp = new UserResponse();
+        resp.setId(user.getId());
+        resp.setFirstName(user.getFirstName());
+        resp.setLastName(user.getLastName());
+        resp.setEmail(user.getEmail());
+        resp.setRole(user.getRole());
+        resp.setAsAuthor(awaitSection(asAuthor, "asAuthor", resp));
+        resp.setAsExecutor(awaitSection(asExecutor, "asExecutor", resp));
+        resp.setComments(awaitSection(comments, "comments", resp));
+        // the ETag is cached with the response, a 304 for a cached user executes no statement
+        if (resp.getUnavailable().isEmpty()) {
+            resp.setEtag(ETags.of(user.getVersion(), resp));
+        }
+        return resp;
+    }
+
+    private CompletableFuture<List<String>> loadSection(Supplier<List<String>> query) {
+        try {
+            return CompletableFuture.supplyAsync(
+                            () -> sectionTransaction.execute(status -> query.get()), profileExecutor)
+                    .orTimeout(profileTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private List<String> awaitSection(CompletableFuture<List<String>> section, String name, UserResponse resp) {
+        try {
+            return section.get();
+        } catch (ExecutionException e) {
+            log.warn("Profile section {} of user {} is unavailable: {}", name, resp.getId(), e.getCause().toString());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        resp.getUnavailable().add(name);
+        return null;
+    }
+
+    // bounded alternative to getById: one statement, every section capped at limit rows
+    public UserProfileResponse getProfile(Long id, int limit) {
+        int pageSize = Math.max(1, Math.min(limit, MAX_PROFILE_PREVIEW));
+        List<Object[]> rows = userRepository.findProfileRows(id, pageSize + 1);
+
+        UserProfileResponse resp = new UserProfileResponse();
+        List<Object[]> asAuthor = new ArrayList<>();
+        List<Object[]> asExecutor = new ArrayList<>();
+        List<Object[]> comments = new ArrayList<>();
+        for (Object[] row : rows) {
+            switch ((String) row[0]) {
+                case "USER" -> {
+                    resp.setId(toLong(row[1]));
+                    resp.setFirstName((String) row[2]);
+                    resp.setLastName((String) row[3]);
+                    resp.setEmail((String) row[4]);
+                    resp.setRole(row[5] == null ? null : User.Role.valueOf((String) row[5]));
+                    resp.setAsAuthorTotal(toLong(row[6]));
+                    resp.setAsExecutorTotal(toLong(row[7]));
+                    resp.setCommentsTotal(toLong(row[8]));
+                }
+                case "AUTHOR" -> asAuthor.add(row);
+                case "EXECUTOR" -> asExecutor.add(row);
+                case "COMMENT" -> comments.add(row);
+                default -> throw new IllegalStateException("Unexpected profile row: " + row[0]);
+            }
+        }
+        if (resp.getId() == null) {
+            throw new NoSuchElementException("There is no User with id: " + id);
+        }
+        resp.setAsAuthor(CursorPage.of(asAuthor, pageSize, r -> toLong(r[1]),
+                r -> "id: " + r[1] + ", title: " + r[9]));
+        resp.setAsExecutor(CursorPage.of(asExecutor, pageSize, r -> toLong(r[1]),
+                r -> "id: " + r[1] + ", title: " + r[9]));
+        resp.setComments(CursorPage.of(comments, pageSize, r -> toLong(r[1]),
+                r -> "id: " + r[1] + ", to task: " + r[10]));
+        return resp;
+    }
+
+    private static Long toLong(Object value) {
+        return value == null ? null : ((Number) value).longValue();
     }
 
     public UserResponse toResponse(User user){
@@ -140,44 +273,30 @@ public class UserService {
                 .build();
     }
 
-    // Only ADMIN  user can do this
-    @Caching(evict = {
-            @CacheEvict(value = "users", key = "#result.email"),
-            @CacheEvict(value = "user_resp", key = "#userId"),
-            @CacheEvict(value = "tasks", allEntries = true)
-    })
-    public User deleteUser(Long userId) {
-
-        User user = userRepository.findByIdWithTasks(userId).orElseThrow(
-                () -> new NoSuchElementException("There is no User with id: " + userId));
-
-        // There is no orphan removal here!!!
-        List<Long> performerTaskList = user.getPerformerTasks()
-                .stream()
-                .map(Task::getId)
-                .toList();
-
-        // clear executor field in affected tasks
-        taskRepository.clearPerformers(performerTaskList);
-
-        // update User DB
-        userRepository.delete(user);
-
-        return user;    // for caching purpose only
-    }
-
     @Caching(evict = {
             @CacheEvict(value = "users", allEntries = true),
-            @CacheEvict(value = "user_resp", key = "#result.id")
+            @CacheEvict(value = "user_resp", key = "#result.id"),
+            @CacheEvict(value = "tasks", allEntries = true),
+            @CacheEvict(value = "token_versions", key = "#result.id")
     })
-    public UserResponse updateUser(UserRequest newUser, Authentication auth) {
-        User current = (User) auth.getPrincipal();
+    public UserResponse updateUser(UserRequest newUser, String ifMatch, Authentication auth)
+            throws PreconditionFailedException {
+        UserPrincipal current = (UserPrincipal) auth.getPrincipal();
         User fromDb = userRepository.findById( current.getId()).orElseThrow();
+        // only the user's own fields are changed, so only the version part of the ETag is compared;
+        // the UPDATE is conditioned on the same version
+        String version = ETags.versionPrefix(fromDb.getVersion());
+        if (ifMatch != null && !ETags.matches(ifMatch, tag -> tag.startsWith(version))) {
+            throw new PreconditionFailedException("User " + fromDb.getId() + " has been changed, current version: "
+                    + fromDb.getVersion());
+        }
         fromDb.setFirstName(newUser.getFirstName());
         fromDb.setLastName(newUser.getLastName());
         fromDb.setEmail(newUser.getEmail());
         fromDb.setPassword( encoder.encode( newUser.getPassword() ));
         fromDb.setRole(newUser.getRole());
+        // email/role are baked into issued tokens, force a new login
+        fromDb.setTokenVersion(fromDb.getTokenVersion() + 1);
         User saved = userRepository.save(fromDb);
         return this.toResponse(saved);
     }
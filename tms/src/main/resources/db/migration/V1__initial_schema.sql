@@ -0,0 +1,44 @@
+-- Tables as mapped by the entities. Databases created earlier by ddl-auto already have them,
+-- hence IF NOT EXISTS everywhere; spring.flyway.baseline-on-migrate lets this script run there too.
+
+CREATE SEQUENCE IF NOT EXISTS user_table_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE IF NOT EXISTS tasks_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE IF NOT EXISTS comments_seq START WITH 1 INCREMENT BY 50;
+
+CREATE TABLE IF NOT EXISTS user_table (
+    id            bigint       NOT NULL PRIMARY KEY,
+    first_name    varchar(255),
+    last_name     varchar(255),
+    email         varchar(255) NOT NULL UNIQUE,
+    password      varchar(255) NOT NULL,
+    role          varchar(255) CHECK (role IN ('USER', 'ADMIN')),
+    token_version integer      NOT NULL DEFAULT 0
+);
+
+CREATE TABLE IF NOT EXISTS tasks (
+    id            bigint       NOT NULL PRIMARY KEY,
+    title         varchar(255) NOT NULL,
+    description   varchar(255),
+    status        varchar(255) NOT NULL CHECK (status IN ('ON_HOLD', 'IN_PROGRESS', 'COMPLETED')),
+    priority      varchar(255) NOT NULL CHECK (priority IN ('LOW', 'MIDDLE', 'HIGH')),
+    author_id     bigint REFERENCES user_table,
+    performer_id  bigint REFERENCES user_table,
+    comment_count integer      NOT NULL DEFAULT 0
+);
+
+CREATE TABLE IF NOT EXISTS comments (
+    id        bigint NOT NULL PRIMARY KEY,
+    task_id   bigint REFERENCES tasks,
+    author_id bigint REFERENCES user_table,
+    text      varchar(255)
+);
+
+-- columns added after the first release, missing in databases that never ran ddl-auto since
+ALTER TABLE user_table ADD COLUMN IF NOT EXISTS token_version integer NOT NULL DEFAULT 0;
+ALTER TABLE tasks ADD COLUMN IF NOT EXISTS comment_count integer NOT NULL DEFAULT 0;
+
+-- ids used to come from IDENTITY columns; move the sequences past them. With the pooled
+-- optimizer Hibernate hands out (value - 49 .. value], so the current value must be >= MAX(id).
+SELECT setval('user_table_seq', GREATEST((SELECT COALESCE(MAX(id), 0) FROM user_table), 1));
+SELECT setval('tasks_seq', GREATEST((SELECT COALESCE(MAX(id), 0) FROM tasks), 1));
+SELECT setval('comments_seq', GREATEST((SELECT COALESCE(MAX(id), 0) FROM comments), 1));
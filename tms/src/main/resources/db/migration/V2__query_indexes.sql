@@ -0,0 +1,25 @@
+-- One index per query path. Keyset listings filter by equality and seek/order by id,
+-- so id is the last column; the same indexes back the foreign keys used in cascades.
+
+-- TaskRepository.findRowsByAuthorId[After], UserRepository.findProfileRows, tasks.author_id FK
+CREATE INDEX IF NOT EXISTS tasks_author_id_idx ON tasks (author_id, id);
+-- TaskRepository.findRowsByPerformerId[After], UserRepository.findProfileRows, tasks.performer_id FK
+CREATE INDEX IF NOT EXISTS tasks_performer_id_idx ON tasks (performer_id, id);
+-- TaskRepository.findRowsByStatus[After], /tasks/filter by status
+CREATE INDEX IF NOT EXISTS tasks_status_idx ON tasks (status, id);
+-- /tasks/filter by status and priority
+CREATE INDEX IF NOT EXISTS tasks_status_priority_idx ON tasks (status, priority, id);
+-- /tasks/filter by priority
+CREATE INDEX IF NOT EXISTS tasks_priority_idx ON tasks (priority, id);
+-- /tasks/filter by title prefix; pattern ops make LIKE 'prefix%' indexable under any collation
+DROP INDEX IF EXISTS tasks_title_idx;
+CREATE INDEX tasks_title_idx ON tasks (title varchar_pattern_ops);
+
+-- CommentRepository.findAllByTaskId*, TaskRepository.repairCommentCounts, comments.task_id FK
+CREATE INDEX IF NOT EXISTS comments_task_id_idx ON comments (task_id, id);
+-- CommentRepository.findAllByAuthorId*, UserRepository.findProfileRows, comments.author_id FK
+CREATE INDEX IF NOT EXISTS comments_author_id_idx ON comments (author_id, id);
+
+-- UserRepository.findByEmail/existsByEmail use the index of the UNIQUE constraint,
+-- the separate email_idx created by ddl-auto only doubled the write cost
+DROP INDEX IF EXISTS email_idx;
@@ -0,0 +1,5 @@
+-- Optimistic locking (@Version of Task, Comment and User), also the source of the ETags of
+-- GET /tasks/{id} and /users/{id}. Existing rows start at 0.
+ALTER TABLE tasks ADD COLUMN IF NOT EXISTS version BIGINT NOT NULL DEFAULT 0;
+ALTER TABLE comments ADD COLUMN IF NOT EXISTS version BIGINT NOT NULL DEFAULT 0;
+ALTER TABLE user_table ADD COLUMN IF NOT EXISTS version BIGINT NOT NULL DEFAULT 0;
@@ -0,0 +1,19 @@
+-- Background deletions of users, see UserDeletionService. Progress is written with every
+-- committed chunk; jobs left PENDING or RUNNING by a stopped instance are run again on startup.
+CREATE SEQUENCE IF NOT EXISTS user_deletion_jobs_seq START WITH 1 INCREMENT BY 50;
+
+CREATE TABLE IF NOT EXISTS user_deletion_jobs (
+    id               bigint                      NOT NULL PRIMARY KEY,
+    user_id          bigint                      NOT NULL,
+    status           varchar(255)                NOT NULL CHECK (status IN ('PENDING', 'RUNNING', 'DONE', 'FAILED')),
+    comments_deleted bigint                      NOT NULL DEFAULT 0,
+    tasks_deleted    bigint                      NOT NULL DEFAULT 0,
+    tasks_unassigned bigint                      NOT NULL DEFAULT 0,
+    error            varchar(1000),
+    created_at       timestamp(6) with time zone NOT NULL,
+    updated_at       timestamp(6) with time zone NOT NULL
+);
+
+-- one unfinished job per user, UserDeletionJobRepository.findFirstByUserIdAndStatusIn
+CREATE UNIQUE INDEX IF NOT EXISTS user_deletion_jobs_active_idx ON user_deletion_jobs (user_id)
+    WHERE status IN ('PENDING', 'RUNNING');
@@ -0,0 +1,199 @@
+package com.zolotarev.tms;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zolotarev.tms.dto.AuthRequest;
+import com.zolotarev.tms.dto.AuthResponse;
+import com.zolotarev.tms.dto.TaskRequest;
+import com.zolotarev.tms.dto.UserRequest;
+import com.zolotarev.tms.entities.Task;
+import com.zolotarev.tms.entities.User;
+import com.zolotarev.tms.repository.UserRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Starts the application once per threading mode and drives the same endpoints with the same
+// number of concurrent clients: task listing and user lookup (JDBC) and login (BCrypt).
+// The virtual-thread mode is only run on a Java 21 runtime.
+// Run with: mvn test -Dtest=ThreadingModeLoadTest -Dbenchmark=true [-Dload.clients=400 -Dload.seconds=20]
+@Slf4j
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public class ThreadingModeLoadTest {
+    private static final int CLIENTS = Integer.getInteger("load.clients", 400);
+    private static final int SECONDS = Integer.getInteger("load.seconds", 20);
+    // one login per this many requests of a client
+    private static final int LOGIN_EVERY = 10;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final HttpClient http = HttpClient.newHttpClient();
+
+    @Test
+    void platformVersusVirtualThreads() throws Exception {
+        Map<String, Result> results = new TreeMap<>();
+        results.put("platform", run(false));
+        if (Runtime.version().feature() >= 21) {
+            results.put("virtual", run(true));
+        } else {
+            log.info("Java {}: virtual-thread mode skipped", Runtime.version().feature());
+        }
+
+        log.info("{} clients, {} s per mode", CLIENTS, SECONDS);
+        log.info(String.format("%-9s %-7s %10s %10s %10s %8s", "mode", "path", "req/s", "p50 ms", "p99 ms", "failed"));
+        results.forEach((mode, result) -> result.latencies.keySet().forEach(path -> {
+            long[] latencies = result.sorted(path);
+            log.info(String.format("%-9s %-7s %10.0f %10.1f %10.1f %8d", mode, path,
+                    latencies.length / (double) SECONDS, percentile(latencies, 50), percentile(latencies, 99),
+                    result.failures.getOrDefault(path, 0)));
+        }));
+        // the numbers of a mode that drops requests are not comparable
+        results.forEach((mode, result) -> assertEquals(Map.of(), result.failures, mode + " mode failed requests"));
+    }
+
+    private Result run(boolean virtual) throws Exception {
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(TmsApplication.class)
+                .properties("server.port=0",
+                        "spring.threads.virtual.enabled=" + virtual,
+                        "spring.jpa.show-sql=false",
+                        "server.tomcat.accept-count=" + CLIENTS)
+                .run()) {
+            String base = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+            String email = "load" + System.nanoTime() + "@ya.ru";
+            AuthResponse auth = seed(base, email);
+            try {
+                return load(base, email, auth);
+            } finally {
+                UserRepository userRepository = context.getBean(UserRepository.class);
+                userRepository.findByEmail(email).ifPresent(userRepository::delete);
+            }
+        }
+    }
+
+    private AuthResponse seed(String base, String email) throws Exception {
+        send(post(base + "/users/register", new UserRequest("Load", "Test", email, "password", User.Role.USER)));
+        AuthResponse auth = objectMapper.readValue(
+                send(post(base + "/users/login", new AuthRequest(email, "password"))), AuthResponse.class);
+        List<TaskRequest> tasks = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            TaskRequest task = new TaskRequest();
+            task.setTitle("load task " + i);
+            task.setStatus(Task.TaskStatus.IN_PROGRESS);
+            task.setPriority(Task.TaskPriority.MIDDLE);
+            tasks.add(task);
+        }
+        send(authorized(post(base + "/tasks/batch/create", tasks), auth));
+        return auth;
+    }
+
+    private Result load(String base, String email, AuthResponse auth) throws Exception {
+        HttpRequest listing = authorized(get(base + "/tasks/all?after=&limit=20"), auth);
+        HttpRequest user = authorized(get(base + "/users/" + auth.getUserId()), auth);
+        HttpRequest login = post(base + "/users/login", new AuthRequest(email, "password"));
+
+        long end = System.nanoTime() + SECONDS * 1_000_000_000L;
+        ExecutorService clients = Executors.newFixedThreadPool(CLIENTS);
+        List<Future<Result>> futures = new ArrayList<>();
+        for (int c = 0; c < CLIENTS; c++) {
+            futures.add(clients.submit(() -> {
+                Result result = new Result();
+                for (int i = 0; System.nanoTime() < end; i++) {
+                    if (i % LOGIN_EVERY == 0) {
+                        result.record("login", login);
+                    } else if (i % 2 == 0) {
+                        result.record("tasks", listing);
+                    } else {
+                        result.record("user", user);
+                    }
+                }
+                return result;
+            }));
+        }
+        Result total = new Result();
+        for (Future<Result> future : futures) {
+            total.merge(future.get());
+        }
+        clients.shutdown();
+        return total;
+    }
+
+    private String send(HttpRequest request) throws Exception {
+        HttpResponse<String> response = http.send(request, HttpResponse.BodyHandlers.ofString());
+        assertTrue(response.statusCode() < 400, request.uri() + " -> " + response.statusCode());
+        return response.body();
+    }
+
+    private HttpRequest post(String url, Object body) throws Exception {
+        return HttpRequest.newBuilder(URI.create(url))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(body)))
+                .build();
+    }
+
+    private static HttpRequest get(String url) {
+        return HttpRequest.newBuilder(URI.create(url)).GET().build();
+    }
+
+    private static HttpRequest authorized(HttpRequest request, AuthResponse auth) {
+        return HttpRequest.newBuilder(request, (name, value) -> true)
+                .header("Authorization", "Bearer " + auth.getToken())
+                .build();
+    }
+
+    private static double percentile(long[] sorted, int percent) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percent / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(index, 0)] / 1_000_000.0;
+    }
+
+    // latencies in ns of the answered requests and the number of failed ones per path
+    private class Result {
+        private final Map<String, List<Long>> latencies = new TreeMap<>();
+        private final Map<String, Integer> failures = new TreeMap<>();
+
+        void record(String path, HttpRequest request) {
+            List<Long> answered = latencies.computeIfAbsent(path, p -> new ArrayList<>());
+            long start = System.nanoTime();
+            try {
+                HttpResponse<Void> response = http.send(request, HttpResponse.BodyHandlers.discarding());
+                if (response.statusCode() < 400) {
+                    answered.add(System.nanoTime() - start);
+                    return;
+                }
+            } catch (IOException e) {
+                // refused or reset connection, counted below
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            failures.merge(path, 1, Integer::sum);
+        }
+
+        void merge(Result other) {
+            other.latencies.forEach((path, values) ->
+                    latencies.computeIfAbsent(path, p -> new ArrayList<>()).addAll(values));
+            other.failures.forEach((path, count) -> failures.merge(path, count, Integer::sum));
+        }
+
+        long[] sorted(String path) {
+            return latencies.get(path).stream().mapToLong(Long::longValue).sorted().toArray();
+        }
+    }
+}
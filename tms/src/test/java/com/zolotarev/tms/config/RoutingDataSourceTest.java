@@ -0,0 +1,162 @@
+package com.zolotarev.tms.config;
+
+import com.zolotarev.tms.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.transaction.annotation.AnnotationTransactionAttributeSource;
+import org.springframework.transaction.interceptor.TransactionAttribute;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Three embedded H2 databases, each knowing its own name, stand in for the primary and two replicas
+public class RoutingDataSourceTest {
+    private RoutingDataSource routing;
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate readOnly;
+    private TransactionTemplate readWrite;
+    private DataSourceTransactionManager transactionManager;
+
+    @BeforeEach
+    void setUp() {
+        Map<String, DataSource> replicas = new LinkedHashMap<>();
+        replicas.put("replica-1", database("replica1"));
+        replicas.put("replica-2", database("replica2"));
+        routing = new RoutingDataSource(database("primary"), replicas);
+
+        DataSource dataSource = new LazyConnectionDataSourceProxy(routing);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        transactionManager = new DataSourceTransactionManager(dataSource);
+        readWrite = new TransactionTemplate(transactionManager);
+        readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+    }
+
+    @AfterEach
+    void tearDown() {
+        for (String name : new String[]{"primary", "replica1", "replica2"}) {
+            try {
+                new JdbcTemplate(new DriverManagerDataSource(url(name))).execute("SHUTDOWN");
+            } catch (Exception ignored) {
+                // already shut down by the test
+            }
+        }
+    }
+
+    @Test
+    void writesGoToPrimary() {
+        assertEquals("primary", readWrite.execute(status -> whoAmI()));
+        assertEquals("primary", whoAmI());
+    }
+
+    @Test
+    void readOnlyTransactionsAreSpreadOverReplicas() {
+        String first = readOnly.execute(status -> whoAmI());
+        String second = readOnly.execute(status -> whoAmI());
+        String third = readOnly.execute(status -> whoAmI());
+
+        assertTrue(first.startsWith("replica"));
+        assertNotEquals(first, second);
+        assertEquals(first, third);
+        assertEquals(3, routing.getReplicas().stream().mapToLong(pool -> pool.getConnections().sum()).sum());
+    }
+
+    @Test
+    void failedReplicaIsSkippedAndComesBack() {
+        new JdbcTemplate(database("replica1")).execute("SHUTDOWN");
+
+        for (int i = 0; i < 4; i++) {
+            assertEquals("replica2", readOnly.execute(status -> whoAmI()));
+        }
+        RoutingDataSource.Pool replica1 = routing.getReplicas().get(0);
+        assertFalse(replica1.isHealthy());
+        assertEquals(1, replica1.getFailures().sum());
+
+        routing.checkHealth(1);
+        assertFalse(replica1.isHealthy());
+
+        database("replica1");
+        routing.checkHealth(1);
+        assertTrue(replica1.isHealthy());
+    }
+
+    @Test
+    void readsFallBackToPrimaryWithoutHealthyReplicas() {
+        new JdbcTemplate(database("replica1")).execute("SHUTDOWN");
+        new JdbcTemplate(database("replica2")).execute("SHUTDOWN");
+        routing.checkHealth(1);
+
+        assertEquals("primary", readOnly.execute(status -> whoAmI()));
+    }
+
+    @Test
+    void connectionsWithCredentialsAreRoutedToo() {
+        assertEquals("primary", readWrite.execute(status -> whoAmI("", "")));
+        assertTrue(readOnly.execute(status -> whoAmI("", "")).startsWith("replica"));
+        assertEquals(1, routing.getReplicas().stream().mapToLong(pool -> pool.getConnections().sum()).sum());
+    }
+
+    // the transactions of these lookups are the ones the repository proxy opens
+    @Test
+    void securityLookupsNeverReachReplica() throws NoSuchMethodException {
+        AnnotationTransactionAttributeSource attributes = new AnnotationTransactionAttributeSource(false);
+        Method[] lookups = {
+                UserRepository.class.getMethod("findTokenVersionById", Long.class),
+                UserRepository.class.getMethod("findByEmail", String.class)};
+        for (Method lookup : lookups) {
+            TransactionAttribute attribute = attributes.getTransactionAttribute(lookup, UserRepository.class);
+            assertNotNull(attribute, lookup.getName());
+            for (int i = 0; i < 4; i++) {
+                assertEquals("primary", new TransactionTemplate(transactionManager, attribute)
+                        .execute(status -> whoAmI()), lookup.getName());
+            }
+        }
+        assertEquals(0, routing.getReplicas().stream().mapToLong(pool -> pool.getConnections().sum()).sum());
+
+        // the other reads of the repository still go to the replicas
+        TransactionAttribute other = attributes.getTransactionAttribute(
+                UserRepository.class.getMethod("findEmailById", Long.class), UserRepository.class);
+        assertTrue(new TransactionTemplate(transactionManager, other).execute(status -> whoAmI()).startsWith("replica"));
+    }
+
+    private String whoAmI() {
+        return jdbcTemplate.queryForObject("SELECT name FROM whoami", String.class);
+    }
+
+    private String whoAmI(String username, String password) {
+        try (Connection connection = routing.getConnection(username, password)) {
+            return new JdbcTemplate(new SingleConnectionDataSource(connection, true))
+                    .queryForObject("SELECT name FROM whoami", String.class);
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // creates the database (again) with its name in a table
+    private static DataSource database(String name) {
+        DriverManagerDataSource create = new DriverManagerDataSource("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1");
+        JdbcTemplate jdbc = new JdbcTemplate(create);
+        jdbc.execute("CREATE TABLE IF NOT EXISTS whoami (name varchar(20))");
+        jdbc.execute("DELETE FROM whoami");
+        jdbc.update("INSERT INTO whoami VALUES (?)", name);
+        return new DriverManagerDataSource(url(name));
+    }
+
+    // IFEXISTS makes a shut down in-memory database fail to connect instead of coming back empty
+    private static String url(String name) {
+        return "jdbc:h2:mem:" + name + ";IFEXISTS=TRUE";
+    }
+}
@@ -1,16 +1,34 @@
 package com.zolotarev.tms.controllers;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.zolotarev.tms.config.StatementBudgetFilter;
 import com.zolotarev.tms.dto.AuthRequest;
 import com.zolotarev.tms.dto.AuthResponse;
+import com.zolotarev.tms.dto.CommentRequest;
+import com.zolotarev.tms.dto.CursorPage;
+import com.zolotarev.tms.dto.TaskChangeEvent;
+import com.zolotarev.tms.dto.TaskRequest;
+import com.zolotarev.tms.dto.TaskUpdateRequest;
+import com.zolotarev.tms.dto.UserPrincipal;
 import com.zolotarev.tms.dto.UserRequest;
+import com.zolotarev.tms.entities.Task;
 import com.zolotarev.tms.entities.User;
 import com.zolotarev.tms.repository.UserRepository;
 import com.zolotarev.tms.service.JwtService;
+import com.zolotarev.tms.service.TaskChangeFeed;
+import com.zolotarev.tms.service.UserDeletionService;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.io.Decoders;
+import io.jsonwebtoken.security.Keys;
+import jakarta.persistence.EntityManager;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
@@ -20,10 +38,17 @@ import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
 import java.util.Optional;
 
+import static org.hamcrest.Matchers.startsWith;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
@@ -31,8 +56,12 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 @ExtendWith(SpringExtension.class)
 @SpringBootTest
 @AutoConfigureMockMvc
+@AutoConfigureObservability(tracing = false)
 @AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
-@TestPropertySource(locations = "classpath:test-application.yml")
+@TestPropertySource(locations = "classpath:test-application.yml",
+        properties = {"application.user-deletion.chunk-size=1", "application.user-deletion.pause=0ms",
+                // the mock environment maps actuator only on the application port; requests are told apart by local port
+                "management.server.port=8080"})
 @Transactional
 public class ControllersTest {
     @Autowired
@@ -50,6 +79,18 @@ public class ControllersTest {
     @Autowired
     private JwtService jwtService;
 
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private UserDeletionService userDeletionService;
+
+    @Autowired
+    private TaskChangeFeed taskChangeFeed;
+
+    @Value("${application.jwt.secret}")
+    private String jwtSecret;
+
     @Test
     void registerUser() throws Exception {
         UserRequest userRequest = new UserRequest("Ivan", "Ivanov", "iv@ya.ru", "111", User.Role.USER);
@@ -106,6 +147,696 @@ public class ControllersTest {
                 .header("Authorization", "Bearer " + response.getToken()))
         // Assert
         .andExpect(status().isFound())
-        .andExpect(content().contentType(MediaType.APPLICATION_JSON));
+        .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+        .andExpect(jsonPath("$.unavailable").isEmpty());
+    }
+
+    @Test
+    void findTasksByCursor() throws Exception {
+        AuthResponse response = registerAndLogin("iv@ya.ru");
+        for (int i = 0; i < 3; i++) {
+            createTask(response.getToken(), task("task " + i));
+        }
+
+        String firstPage = mockMvc.perform(get("/tasks/author/{id}", response.getUserId())
+                        .header("Authorization", "Bearer " + response.getToken())
+                        .param("limit", "2")
+                        .param("after", ""))
+                .andExpect(status().isFound())
+                .andExpect(jsonPath("$.items.length()").value(2))
+                .andExpect(jsonPath("$.items[0].title").value("task 0"))
+                .andExpect(jsonPath("$.next").isNotEmpty())
+                .andReturn().getResponse().getContentAsString();
+        String next = objectMapper.readTree(firstPage).get("next").asText();
+
+        mockMvc.perform(get("/tasks/author/{id}", response.getUserId())
+                        .header("Authorization", "Bearer " + response.getToken())
+                        .param("limit", "2")
+                        .param("after", next))
+                .andExpect(status().isFound())
+                .andExpect(jsonPath("$.items.length()").value(1))
+                .andExpect(jsonPath("$.items[0].title").value("task 2"))
+                .andExpect(jsonPath("$.next").doesNotExist());
+
+        // a huge limit is cut down instead of overflowing limit + 1
+        mockMvc.perform(get("/comments/all")
+                        .header("Authorization", "Bearer " + response.getToken())
+                        .param("limit", String.valueOf(Integer.MAX_VALUE))
+                        .param("after", ""))
+                .andExpect(status().isFound());
+        for (String[] invalid : new String[][]{{"2", "not a cursor"}, {"2", CursorPage.encode(1L).substring(1)},
+                {"0", ""}, {"-1", next}}) {
+            mockMvc.perform(get("/tasks/author/{id}", response.getUserId())
+                            .header("Authorization", "Bearer " + response.getToken())
+                            .param("limit", invalid[0])
+                            .param("after", invalid[1]))
+                    .andExpect(status().isBadRequest());
+        }
+    }
+
+    @Test
+    void filterTasks() throws Exception {
+        AuthResponse response = registerAndLogin("iv@ya.ru");
+        Task.TaskPriority[] priorities = {Task.TaskPriority.HIGH, Task.TaskPriority.LOW, Task.TaskPriority.HIGH};
+        for (int i = 0; i < priorities.length; i++) {
+            TaskRequest taskRequest = task((i == 2 ? "fix " : "task ") + i);
+            taskRequest.setStatus(Task.TaskStatus.IN_PROGRESS);
+            taskRequest.setPriority(priorities[i]);
+            createTask(response.getToken(), taskRequest);
+        }
+
+        mockMvc.perform(get("/tasks/filter")
+                        .header("Authorization", "Bearer " + response.getToken())
+                        .param("status", "IN_PROGRESS")
+                        .param("priority", "HIGH")
+                        .param("authorId", response.getUserId().toString()))
+                .andExpect(status().isFound())
+                .andExpect(jsonPath("$.items.length()").value(2))
+                .andExpect(jsonPath("$.items[0].title").value("task 0"));
+
+        mockMvc.perform(get("/tasks/filter")
+                        .header("Authorization", "Bearer " + response.getToken())
+                        .param("priority", "HIGH")
+                        .param("titlePrefix", "fix"))
+                .andExpect(status().isFound())
+                .andExpect(jsonPath("$.items.length()").value(1))
+                .andExpect(jsonPath("$.items[0].title").value("fix 2"));
+    }
+
+    @Test
+    void taskListingIsSingleStatement() throws Exception {
+        AuthResponse response = registerAndLogin("iv@ya.ru");
+
+        // every task gets its own performer, so an entity based listing would load one user per row
+        for (int i = 0; i < 6; i++) {
+            User performer = userRepository.save(User.builder()
+                    .firstName("Petr" + i)
+                    .lastName("Petrov")
+                    .email("petr" + i + "@ya.ru")
+                    .password(passwordEncoder.encode("111"))
+                    .role(User.Role.USER)
+                    .build());
+            TaskRequest taskRequest = task("task " + i);
+            taskRequest.setPerformerId(performer.getId());
+            createTask(response.getToken(), taskRequest);
+        }
+
+        Statistics statistics = entityManager.getEntityManagerFactory()
+                .unwrap(SessionFactory.class).getStatistics();
+        statistics.setStatisticsEnabled(true);
+
+        long smallPage = countListingStatements(response.getToken(), 2, statistics);
+        long fullPage = countListingStatements(response.getToken(), 6, statistics);
+
+        assertEquals(1, smallPage);
+        assertEquals(smallPage, fullPage);
+    }
+
+    @Test
+    void commentCountIsMaintained() throws Exception {
+        AuthResponse response = registerAndLogin("iv@ya.ru");
+        Long taskId = createTask(response.getToken(), task("task"));
+        for (int i = 0; i < 2; i++) {
+            createComment(response.getToken(), taskId, "comment " + i);
+        }
+        entityManager.flush();
+        entityManager.clear();
+
+        mockMvc.perform(get("/tasks/{id}", taskId)
+                        .header("Authorization", "Bearer " + response.getToken()))
+                .andExpect(status().isFound())
+                .andExpect(jsonPath("$.comments").value("2 comment(s)"));
+    }
+
+    @Test
+    void getUserProfileIsBounded() throws Exception {
+        AuthResponse response = registerAndLogin("iv@ya.ru");
+        for (int i = 0; i < 3; i++) {
+            TaskRequest taskRequest = task("task " + i);
+            taskRequest.setPerformerId(response.getUserId());
+            createTask(response.getToken(), taskRequest);
+        }
+
+        mockMvc.perform(get("/users/{id}/profile", response.getUserId())
+                        .header("Authorization", "Bearer " + response.getToken())
+                        .param("limit", "2"))
+                .andExpect(status().isFound())
+                .andExpect(jsonPath("$.email").value("iv@ya.ru"))
+                .andExpect(jsonPath("$.asAuthorTotal").value(3))
+                .andExpect(jsonPath("$.asExecutorTotal").value(3))
+                .andExpect(jsonPath("$.commentsTotal").value(0))
+                .andExpect(jsonPath("$.asAuthor.items.length()").value(2))
+                .andExpect(jsonPath("$.asAuthor.next").isNotEmpty())
+                .andExpect(jsonPath("$.comments.items.length()").value(0));
+    }
+    @Test
+    void metricsAreExposed() throws Exception {
+        AuthResponse response = registerAndLogin("iv@ya.ru");
+
+        mockMvc.perform(get("/tasks/all?after=&limit=2")
+                        .header("Authorization", "Bearer " + response.getToken()))
+                .andExpect(status().isFound());
+
+        // not on the application port
+        mockMvc.perform(get("/actuator/prometheus").header("Authorization", "Bearer " + response.getToken()))
+                .andExpect(status().isForbidden());
+
+        String metrics = mockMvc.perform(get("/actuator/prometheus").with(request -> {
+                    request.setLocalPort(8080);
+                    return request;
+                }))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+
+        assertTrue(metrics.contains("uri=\"/tasks/all\""), "request timer per endpoint");
+        assertTrue(metrics.contains("tms_jwt_verification_seconds_count"));
+        assertTrue(metrics.contains("tms_password_seconds_count{operation=\"matches\""));
+        assertTrue(metrics.contains("hibernate_statements_total"));
+        assertTrue(metrics.contains("hikaricp_connections_active"));
+        assertTrue(metrics.contains("cache_gets_total{cache=\"token_versions\""));
+    }
+
+    @Test
+    void endpointsStayWithinStatementBudget() throws Exception {
+        AuthResponse response = registerAndLogin("iv@ya.ru");
+        String token = response.getToken();
+        Long userId = response.getUserId();
+
+        Long taskId = null;
+        for (int i = 0; i < 3; i++) {
+            TaskRequest taskRequest = task("task " + i);
+            taskRequest.setPerformerId(userId);
+            Long id = createTask(token, taskRequest);
+            taskId = taskId == null ? id : taskId;
+        }
+        CommentRequest commentRequest = new CommentRequest();
+        commentRequest.setTaskId(taskId);
+        commentRequest.setText("comment");
+        assertStatements(3, post("/comments/create")
+                .header("Authorization", "Bearer " + token)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(commentRequest)));
+
+        // the token version lookup may or may not be cached, it is included in every budget
+        assertStatements(2, get("/tasks/{id}", taskId).header("Authorization", "Bearer " + token));
+        assertStatements(2, get("/tasks/all").param("limit", "20").header("Authorization", "Bearer " + token));
+        assertStatements(2, get("/tasks/author/{id}", userId).param("after", "")
+                .header("Authorization", "Bearer " + token));
+        assertStatements(2, get("/comments/by-task/{id}", taskId).param("after", "")
+                .header("Authorization", "Bearer " + token));
+        assertStatements(5, get("/users/{id}", userId).header("Authorization", "Bearer " + token));
+        assertStatements(2, get("/users/{id}/profile", userId).header("Authorization", "Bearer " + token));
+    }
+
+    @Test
+    void conditionalRequestsUseVersions() throws Exception {
+        AuthResponse response = registerAndLogin("iv@ya.ru");
+        String token = response.getToken();
+        TaskRequest taskRequest = task("task");
+        Long taskId = createTask(token, taskRequest);
+        entityManager.flush();
+        entityManager.clear();
+
+        String etag = mockMvc.perform(get("/tasks/{id}", taskId).header("Authorization", "Bearer " + token))
+                .andExpect(status().isFound())
+                .andExpect(header().exists("ETag"))
+                .andReturn().getResponse().getHeader("ETag");
+        MvcResult notModified = mockMvc.perform(get("/tasks/{id}", taskId)
+                        .header("Authorization", "Bearer " + token)
+                        .header("If-None-Match", etag))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""))
+                .andReturn();
+        // the version lookup, plus the token version when it is not cached
+        assertTrue((Integer) notModified.getRequest().getAttribute(StatementBudgetFilter.STATEMENTS) <= 2);
+
+        // a comment changes the count in the response, so the task version
+        createComment(token, taskId, "comment");
+        entityManager.flush();
+        entityManager.clear();
+        String changed = mockMvc.perform(get("/tasks/{id}", taskId)
+                        .header("Authorization", "Bearer " + token)
+                        .header("If-None-Match", etag))
+                .andExpect(status().isFound())
+                .andExpect(jsonPath("$.comments").value("1 comment(s)"))
+                .andReturn().getResponse().getHeader("ETag");
+        assertNotEquals(etag, changed);
+
+        taskRequest.setTitle("renamed");
+        mockMvc.perform(put("/tasks/update/{id}", taskId)
+                        .param("id", taskId.toString())
+                        .header("Authorization", "Bearer " + token)
+                        .header("If-Match", etag)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(taskRequest)))
+                .andExpect(status().isPreconditionFailed());
+        mockMvc.perform(put("/tasks/update/{id}", taskId)
+                        .param("id", taskId.toString())
+                        .header("Authorization", "Bearer " + token)
+                        .header("If-Match", changed)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(taskRequest)))
+                .andExpect(status().isOk());
+
+        String userEtag = mockMvc.perform(get("/users/{id}", response.getUserId())
+                        .header("Authorization", "Bearer " + token))
+                .andExpect(status().isFound())
+                .andExpect(header().exists("ETag"))
+                .andReturn().getResponse().getHeader("ETag");
+        // the user version and 64 bits of the sections' digest
+        assertTrue(userEtag.matches("\"\\d+\\.[0-9a-f]{16}\""), userEtag);
+        mockMvc.perform(get("/users/{id}", response.getUserId())
+                        .header("Authorization", "Bearer " + token)
+                        .header("If-None-Match", userEtag))
+                .andExpect(status().isNotModified());
+    }
+
+    @Test
+    void updateReassignsPerformer() throws Exception {
+        AuthResponse author = registerAndLogin("iv0@ya.ru");
+        AuthResponse performer = registerAndLogin("iv1@ya.ru");
+        TaskRequest taskRequest = task("task");
+        Long taskId = createTask(author.getToken(), taskRequest);
+        entityManager.flush();
+        entityManager.clear();
+
+        taskRequest.setPerformerId(performer.getUserId());
+        mockMvc.perform(put("/tasks/update/{id}", taskId)
+                        .param("id", taskId.toString())
+                        .header("Authorization", "Bearer " + author.getToken())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(taskRequest)))
+                .andExpect(status().isOk());
+        entityManager.flush();
+        entityManager.clear();
+
+        mockMvc.perform(get("/tasks/{id}", taskId).header("Authorization", "Bearer " + author.getToken()))
+                .andExpect(status().isFound())
+                .andExpect(jsonPath("$.performer").value(startsWith("id: " + performer.getUserId())));
+        mockMvc.perform(get("/tasks/performer/{id}", performer.getUserId())
+                        .header("Authorization", "Bearer " + author.getToken())
+                        .param("after", ""))
+                .andExpect(status().isFound())
+                .andExpect(jsonPath("$.items.length()").value(1));
+    }
+
+    @Test
+    void patchIsSingleStatement() throws Exception {
+        AuthResponse author = registerAndLogin("iv0@ya.ru");
+        AuthResponse other = registerAndLogin("iv1@ya.ru");
+        Long taskId = createTask(author.getToken(), task("task"));
+
+        // the UPDATE itself, plus the token version when it is not cached
+        assertStatements(2, patch("/tasks/{id}", taskId)
+                .header("Authorization", "Bearer " + author.getToken())
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"status\": \"COMPLETED\"}"));
+        assertStatements(2, patch("/tasks/{id}", taskId)
+                .header("Authorization", "Bearer " + author.getToken())
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"performerId\": " + other.getUserId() + "}"));
+        entityManager.flush();
+        entityManager.clear();
+        mockMvc.perform(get("/tasks/{id}", taskId).header("Authorization", "Bearer " + author.getToken()))
+                .andExpect(status().isFound())
+                .andExpect(jsonPath("$.title").value("task"))
+                .andExpect(jsonPath("$.status").value("COMPLETED"))
+                .andExpect(jsonPath("$.performer").value(startsWith("id: " + other.getUserId())));
+
+        // the performer is not the author
+        mockMvc.perform(patch("/tasks/{id}", taskId)
+                        .header("Authorization", "Bearer " + other.getToken())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"status\": \"IN_PROGRESS\"}"))
+                .andExpect(status().isForbidden());
+
+        Long commentId = createComment(other.getToken(), taskId, "comment");
+        CommentRequest commentRequest = new CommentRequest();
+        commentRequest.setTaskId(taskId);
+        commentRequest.setText("edited");
+        assertStatements(2, patch("/comments/{id}", commentId)
+                .header("Authorization", "Bearer " + other.getToken())
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(commentRequest)));
+        mockMvc.perform(patch("/comments/{id}", commentId)
+                        .header("Authorization", "Bearer " + author.getToken())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(commentRequest)))
+                .andExpect(status().isForbidden());
+
+        mockMvc.perform(patch("/tasks/{id}", Long.MAX_VALUE)
+                        .header("Authorization", "Bearer " + author.getToken())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"status\": \"COMPLETED\"}"))
+                .andExpect(status().isNotFound());
+        mockMvc.perform(patch("/comments/{id}", Long.MAX_VALUE)
+                        .header("Authorization", "Bearer " + author.getToken())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(commentRequest)))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void patchRejectsEmptyChangesAndBlankTitle() throws Exception {
+        AuthResponse author = registerAndLogin("iv@ya.ru");
+        Long taskId = createTask(author.getToken(), task("task"));
+
+        mockMvc.perform(patch("/tasks/{id}", taskId)
+                        .header("Authorization", "Bearer " + author.getToken())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{}"))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().string("Nothing to update in task: " + taskId));
+        mockMvc.perform(patch("/tasks/{id}", taskId)
+                        .header("Authorization", "Bearer " + author.getToken())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"title\": \" \"}"))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().string("Title must not be blank"));
+    }
+
+    @Test
+    void deleteStatementsDoNotDependOnCommentCount() throws Exception {
+        AuthResponse response = registerAndLogin("iv@ya.ru");
+        String token = response.getToken();
+
+        // one comment on the first task, ten on the second
+        List<Long> taskIds = List.of(createTask(token, task("task 0")), createTask(token, task("task 1")));
+        int[] comments = {1, 10};
+        Long commentId = null;
+        for (int i = 0; i < 2; i++) {
+            for (int j = 0; j < comments[i]; j++) {
+                Long id = createComment(token, taskIds.get(i), "comment " + j);
+                commentId = commentId == null ? id : commentId;
+            }
+        }
+
+        // the comment: its task id, the DELETE and the counter
+        assertStatements(4, delete("/comments/delete/{id}", commentId).header("Authorization", "Bearer " + token));
+
+        // the comments and the task, whatever the number of comments; the first request caches the token version
+        int small = assertStatements(3, delete("/tasks/delete/{id}", taskIds.get(0)).header("Authorization", "Bearer " + token));
+        int large = assertStatements(3, delete("/tasks/delete/{id}", taskIds.get(1)).header("Authorization", "Bearer " + token));
+        assertEquals(small, large);
+        assertEquals(0L, entityManager.createQuery("SELECT count(c) FROM Comment c WHERE c.taskId IN ?1", Long.class)
+                .setParameter(1, taskIds).getSingleResult());
+
+        mockMvc.perform(delete("/tasks/delete/{id}", taskIds.get(0)).header("Authorization", "Bearer " + token))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void deleteUserRunsAsChunkedJob() throws Exception {
+        AuthResponse victim = registerAndLogin("iv0@ya.ru");
+        AuthResponse other = registerAndLogin("iv1@ya.ru");
+        AuthResponse admin = registerAndLogin("iv2@ya.ru", User.Role.ADMIN);
+
+        // a task of the victim and a task of the other user performed by the victim
+        TaskRequest taskRequest = task("task");
+        taskRequest.setPerformerId(victim.getUserId());
+        Long ownTask = createTask(victim.getToken(), taskRequest);
+        Long otherTask = createTask(other.getToken(), taskRequest);
+        // both users comment on both tasks, the victim twice
+        for (AuthResponse author : List.of(victim, victim, other)) {
+            for (Long taskId : List.of(ownTask, otherTask)) {
+                createComment(author.getToken(), taskId, "comment");
+            }
+        }
+
+        String location = mockMvc.perform(delete("/users/delete/{id}", victim.getUserId())
+                        .header("Authorization", "Bearer " + admin.getToken()))
+                .andExpect(status().isAccepted())
+                .andExpect(jsonPath("$.status").value("PENDING"))
+                .andReturn().getResponse().getHeader("Location");
+        Long jobId = Long.valueOf(location.substring(location.lastIndexOf('/') + 1));
+        // the same unfinished job
+        mockMvc.perform(delete("/users/delete/{id}", victim.getUserId())
+                        .header("Authorization", "Bearer " + admin.getToken()))
+                .andExpect(status().isAccepted())
+                .andExpect(jsonPath("$.id").value(jobId));
+        // logged out before the data is gone
+        mockMvc.perform(get("/tasks/{id}", otherTask).header("Authorization", "Bearer " + victim.getToken()))
+                .andExpect(status().is4xxClientError());
+        // and can't log in again while the job runs
+        mockMvc.perform(post("/users/login")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(new AuthRequest("iv0@ya.ru", "111"))))
+                .andExpect(status().isForbidden());
+
+        // in the test transaction instead of the executor, one row per chunk
+        entityManager.flush();
+        entityManager.clear();
+        userDeletionService.run(jobId);
+        entityManager.clear();
+
+        mockMvc.perform(get(location).header("Authorization", "Bearer " + admin.getToken()))
+                .andExpect(status().isFound())
+                .andExpect(jsonPath("$.status").value("DONE"))
+                .andExpect(jsonPath("$.commentsDeleted").value(5))
+                .andExpect(jsonPath("$.tasksDeleted").value(1))
+                .andExpect(jsonPath("$.tasksUnassigned").value(2));
+        assertFalse(userRepository.existsById(victim.getUserId()));
+        Task left = entityManager.find(Task.class, otherTask);
+        assertNull(left.getPerformerId());
+        assertEquals(1, left.getCommentCount());
+        assertNull(entityManager.find(Task.class, ownTask));
+    }
+
+    @Test
+    void principalComesFromTokenClaims() throws Exception {
+        AuthResponse admin = registerAndLogin("iv@ya.ru", User.Role.ADMIN);
+        UserPrincipal principal = jwtService.extractPrincipal(admin.getToken());
+        assertEquals(admin.getUserId(), principal.getId());
+        assertEquals("iv@ya.ru", principal.getEmail());
+        assertEquals(User.Role.ADMIN, principal.getRole());
+
+        // the role of the claims opens the admin endpoint; with the token version cached
+        // the request executes no statement, the user is not loaded
+        assertStatements(1, get("/caches/jwt").header("Authorization", "Bearer " + admin.getToken()));
+        assertStatements(0, get("/caches/jwt").header("Authorization", "Bearer " + admin.getToken()));
+    }
+
+    @Test
+    void updatedUserLosesOldTokens() throws Exception {
+        AuthResponse response = registerAndLogin("iv@ya.ru");
+        mockMvc.perform(get("/users/{id}", response.getUserId()).header("Authorization", "Bearer " + response.getToken()))
+                .andExpect(status().isFound());
+        entityManager.flush();
+        entityManager.clear();
+
+        UserRequest changed = new UserRequest("Petr", "Petrov", "iv@ya.ru", "222", User.Role.USER);
+        mockMvc.perform(put("/users/update")
+                        .header("Authorization", "Bearer " + response.getToken())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(changed)))
+                .andExpect(status().isOk());
+
+        // the signature is still valid, the token version is not
+        mockMvc.perform(get("/users/{id}", response.getUserId()).header("Authorization", "Bearer " + response.getToken()))
+                .andExpect(status().isForbidden());
+        String token = objectMapper.readValue(mockMvc.perform(post("/users/login")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(new AuthRequest("iv@ya.ru", "222"))))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString(), AuthResponse.class).getToken();
+        mockMvc.perform(get("/users/{id}", response.getUserId()).header("Authorization", "Bearer " + token))
+                .andExpect(status().isFound());
+    }
+
+    @Test
+    void cachedTokenExpiresWithTheToken() throws Exception {
+        AuthResponse response = registerAndLogin("iv@ya.ru");
+        // exp has whole seconds
+        long expiresAt = (System.currentTimeMillis() / 1000 + 2) * 1000;
+        String token = Jwts.builder()
+                .subject("iv@ya.ru")
+                .claim(JwtService.USER_ID_CLAIM, response.getUserId())
+                .claim(JwtService.ROLE_CLAIM, User.Role.USER.name())
+                .claim(JwtService.VERSION_CLAIM, 0)
+                .expiration(new Date(expiresAt))
+                .signWith(Keys.hmacShaKeyFor(Decoders.BASE64.decode(jwtSecret)))
+                .compact();
+
+        // verified once, then served from the verified-token cache
+        mockMvc.perform(get("/users/{id}", response.getUserId()).header("Authorization", "Bearer " + token))
+                .andExpect(status().isFound());
+        Thread.sleep(expiresAt - System.currentTimeMillis() + 100);
+        mockMvc.perform(get("/users/{id}", response.getUserId()).header("Authorization", "Bearer " + token))
+                .andExpect(status().isForbidden());
+    }
+
+    @Test
+    void batchesReportEveryItem() throws Exception {
+        AuthResponse author = registerAndLogin("iv0@ya.ru");
+        AuthResponse other = registerAndLogin("iv1@ya.ru");
+        Long foreignTask = createTask(other.getToken(), task("foreign"));
+
+        TaskRequest withPerformer = task("assigned");
+        withPerformer.setPerformerId(other.getUserId());
+        TaskRequest missingPerformer = task("nobody");
+        missingPerformer.setPerformerId(Long.MAX_VALUE);
+        String created = mockMvc.perform(post("/tasks/batch/create")
+                        .header("Authorization", "Bearer " + author.getToken())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(List.of(task("own"), withPerformer, task(null),
+                                missingPerformer))))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(4))
+                .andExpect(jsonPath("$[0].success").value(true))
+                .andExpect(jsonPath("$[1].success").value(true))
+                .andExpect(jsonPath("$[2].success").value(false))
+                .andExpect(jsonPath("$[2].error").value("Title, status and priority are required"))
+                .andExpect(jsonPath("$[3].success").value(false))
+                .andExpect(jsonPath("$[3].error").value("There is no User with Id: " + Long.MAX_VALUE))
+                .andReturn().getResponse().getContentAsString();
+        Long ownTask = objectMapper.readTree(created).get(0).get("id").asLong();
+        entityManager.flush();
+        entityManager.clear();
+
+        List<TaskUpdateRequest> updates = new ArrayList<>();
+        for (Long id : List.of(ownTask, foreignTask, Long.MAX_VALUE)) {
+            TaskUpdateRequest update = new TaskUpdateRequest();
+            update.setId(id);
+            update.setTask(withPerformer);
+            updates.add(update);
+        }
+        mockMvc.perform(put("/tasks/batch/update")
+                        .header("Authorization", "Bearer " + author.getToken())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(updates)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].success").value(true))
+                .andExpect(jsonPath("$[1].success").value(false))
+                .andExpect(jsonPath("$[1].error").value("You have no permission to update this task: " + foreignTask))
+                .andExpect(jsonPath("$[2].success").value(false))
+                .andExpect(jsonPath("$[2].error").value("There is no task with id: " + Long.MAX_VALUE));
+        entityManager.flush();
+        entityManager.clear();
+        assertEquals("assigned", entityManager.find(Task.class, ownTask).getTitle());
+        assertEquals(other.getUserId(), entityManager.find(Task.class, ownTask).getPerformerId());
+        assertEquals("foreign", entityManager.find(Task.class, foreignTask).getTitle());
+
+        mockMvc.perform(post("/tasks/batch/delete")
+                        .header("Authorization", "Bearer " + author.getToken())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(List.of(ownTask, foreignTask))))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].success").value(true))
+                .andExpect(jsonPath("$[1].success").value(false))
+                .andExpect(jsonPath("$[1].error").value("You have no permission to delete this task: " + foreignTask));
+        entityManager.clear();
+        assertNull(entityManager.find(Task.class, ownTask));
+        assertNotNull(entityManager.find(Task.class, foreignTask));
+
+        // the whole batch is refused before anything is read
+        mockMvc.perform(post("/tasks/batch/delete")
+                        .header("Authorization", "Bearer " + author.getToken())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(Collections.nCopies(501, ownTask))))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().string("Batch is too large: 501, max: 500"));
+    }
+
+    @Test
+    void streamSendsMatchingChanges() throws Exception {
+        AuthResponse response = registerAndLogin("iv@ya.ru");
+
+        MvcResult stream = mockMvc.perform(get("/tasks/stream")
+                        .param("performerId", "10")
+                        .header("Authorization", "Bearer " + response.getToken()))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        // committed changes, as handed over by the services after the commit
+        taskChangeFeed.emit(List.of(
+                new TaskChangeEvent(0, TaskChangeEvent.Type.TASK_UPDATED, 1001L, null, 1L, 20L,
+                        Task.TaskStatus.ON_HOLD, true, false, false),
+                new TaskChangeEvent(0, TaskChangeEvent.Type.TASK_UPDATED, 1002L, null, 1L, 10L,
+                        Task.TaskStatus.ON_HOLD, true, false, false)));
+
+        String events = "";
+        for (int i = 0; i < 50 && !events.contains("1002"); i++) {
+            Thread.sleep(100);
+            events = stream.getResponse().getContentAsString();
+        }
+        assertTrue(events.contains("event:TASK_UPDATED"), events);
+        assertTrue(events.contains("\"taskId\":1002"), events);
+        assertFalse(events.contains("\"taskId\":1001"), events);
+    }
+
+    private AuthResponse registerAndLogin(String email) throws Exception {
+        return registerAndLogin(email, User.Role.USER);
+    }
+
+    private AuthResponse registerAndLogin(String email, User.Role role) throws Exception {
+        UserRequest userRequest = new UserRequest("Ivan", "Ivanov", email, "111", role);
+        mockMvc.perform(post("/users/register")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(userRequest)))
+                .andExpect(status().isCreated());
+
+        AuthRequest authRequest = new AuthRequest(email, "111");
+        String responseString = mockMvc.perform(post("/users/login")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(authRequest)))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        return objectMapper.readValue(responseString, AuthResponse.class);
+    }
+
+    private static TaskRequest task(String title) {
+        TaskRequest taskRequest = new TaskRequest();
+        taskRequest.setTitle(title);
+        taskRequest.setStatus(Task.TaskStatus.ON_HOLD);
+        taskRequest.setPriority(Task.TaskPriority.LOW);
+        return taskRequest;
+    }
+
+    // id of the created task, from "Task created with id: N"
+    private Long createTask(String token, TaskRequest taskRequest) throws Exception {
+        String body = mockMvc.perform(post("/tasks/create")
+                        .header("Authorization", "Bearer " + token)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(taskRequest)))
+                .andExpect(status().isCreated())
+                .andReturn().getResponse().getContentAsString();
+        return Long.valueOf(body.substring(body.lastIndexOf(' ') + 1));
+    }
+
+    private Long createComment(String token, Long taskId, String text) throws Exception {
+        CommentRequest commentRequest = new CommentRequest();
+        commentRequest.setTaskId(taskId);
+        commentRequest.setText(text);
+        String body = mockMvc.perform(post("/comments/create")
+                        .header("Authorization", "Bearer " + token)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(commentRequest)))
+                .andExpect(status().isCreated())
+                .andReturn().getResponse().getContentAsString();
+        return Long.valueOf(body.substring(body.lastIndexOf(' ') + 1));
+    }
+
+    // fails when a change adds statements to the endpoint, e.g. an N+1 over the listed rows
+    private int assertStatements(int budget, MockHttpServletRequestBuilder request) throws Exception {
+        entityManager.flush();
+        entityManager.clear();
+        MvcResult result = mockMvc.perform(request).andReturn();
+        assertTrue(result.getResponse().getStatus() < 400, result.getResponse().getContentAsString());
+        int statements = (Integer) result.getRequest().getAttribute(StatementBudgetFilter.STATEMENTS);
+        assertTrue(statements <= budget, result.getRequest().getRequestURI() + " executed "
+                + statements + " statements, budget is " + budget);
+        return statements;
+    }
+
+    private long countListingStatements(String token, int limit, Statistics statistics) throws Exception {
+        entityManager.flush();
+        entityManager.clear();
+        statistics.clear();
+        mockMvc.perform(get("/tasks/all")
+                        .header("Authorization", "Bearer " + token)
+                        .param("limit", String.valueOf(limit)))
+                .andExpect(status().isFound())
+                .andExpect(jsonPath("$.length()").value(limit));
+        return statistics.getPrepareStatementCount();
     }
 }
@@ -0,0 +1,27 @@
+package com.zolotarev.tms.repository;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Keeps every SQL string Hibernate prepares, registered through
+// hibernate.session_factory.statement_inspector in the tests that need it
+public class SqlRecorder implements StatementInspector {
+    private static final List<String> STATEMENTS = Collections.synchronizedList(new ArrayList<>());
+
+    @Override
+    public String inspect(String sql) {
+        STATEMENTS.add(sql);
+        return sql;
+    }
+
+    public static void clear() {
+        STATEMENTS.clear();
+    }
+
+    public static String last() {
+        return STATEMENTS.get(STATEMENTS.size() - 1);
+    }
+}
@@ -0,0 +1,128 @@
+package com.zolotarev.tms.repository;
+
+import com.zolotarev.tms.dto.TaskFilter;
+import com.zolotarev.tms.entities.Task;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Runs EXPLAIN on the SQL generated for /tasks/filter and checks which index the plan uses.
+// Plans are cost based, so the tables are filled with a few thousand rows of skewed data first;
+// on PostgreSQL they are analyzed and sequential scans are switched off for the transaction.
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.session_factory.statement_inspector="
+        + "com.zolotarev.tms.repository.SqlRecorder")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@TestPropertySource(locations = "classpath:test-application.yml")
+@Transactional
+public class TaskFilterPlanTest {
+    private static final int LIMIT = 6;
+    private static final int USERS = 50;
+    private static final int TASKS = 5000;
+
+    @Autowired
+    private TaskRepository taskRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private boolean postgres;
+
+    @BeforeEach
+    void setUp() {
+        postgres = Boolean.TRUE.equals(jdbcTemplate.execute((java.sql.Connection c) ->
+                c.getMetaData().getDatabaseProductName().toLowerCase().contains("postgres")));
+        seed();
+        if (postgres) {
+            jdbcTemplate.execute("ANALYZE user_table");
+            jdbcTemplate.execute("ANALYZE tasks");
+            jdbcTemplate.execute("SET LOCAL enable_seqscan = off");
+        }
+    }
+
+    // one task in 50 is HIGH, one in 1000 starts with "Fix", authors and performers are spread over 50 users
+    private void seed() {
+        List<Object[]> users = new ArrayList<>();
+        for (long id = 1; id <= USERS; id++) {
+            users.add(new Object[]{id, "First" + id, "Last" + id, "plan" + id + "@ya.ru", "not used", "USER"});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO user_table (id, first_name, last_name, email, password, role, "
+                + "token_version) VALUES (?, ?, ?, ?, ?, ?, 0)", users);
+
+        Task.TaskStatus[] statuses = Task.TaskStatus.values();
+        List<Object[]> tasks = new ArrayList<>();
+        for (long id = 1; id <= TASKS; id++) {
+            String title = (id % 1000 == 0 ? "Fix " : "Task ") + id;
+            String priority = id % 50 == 0 ? "HIGH" : (id % 2 == 0 ? "MIDDLE" : "LOW");
+            tasks.add(new Object[]{id, title, statuses[(int) (id % statuses.length)].name(), priority,
+                    id % USERS + 1, (id * 7) % USERS + 1});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO tasks (id, title, status, priority, author_id, performer_id, "
+                + "comment_count) VALUES (?, ?, ?, ?, ?, ?, 0)", tasks);
+    }
+
+    @Test
+    void filterByStatusAndPriorityUsesCompositeIndex() {
+        TaskFilter filter = new TaskFilter(Task.TaskStatus.IN_PROGRESS, Task.TaskPriority.HIGH, null, null, null);
+        String plan = explain(filter, List.of("IN_PROGRESS", "HIGH"));
+        assertTrue(plan.contains("tasks_status_priority_idx"), plan);
+    }
+
+    @Test
+    void filterByPriorityUsesPriorityIndex() {
+        TaskFilter filter = new TaskFilter(null, Task.TaskPriority.HIGH, null, null, null);
+        String plan = explain(filter, List.of("HIGH"));
+        assertTrue(plan.contains("tasks_priority_idx"), plan);
+    }
+
+    @Test
+    void filterByAuthorUsesAuthorIndex() {
+        TaskFilter filter = new TaskFilter(null, null, 1L, null, null);
+        String plan = explain(filter, List.of(1L));
+        assertTrue(plan.contains("tasks_author_id_idx"), plan);
+    }
+
+    @Test
+    void filterByPerformerAndStatusUsesAnIndex() {
+        TaskFilter filter = new TaskFilter(Task.TaskStatus.ON_HOLD, null, null, 2L, null);
+        String plan = explain(filter, List.of("ON_HOLD", 2L));
+        assertTrue(plan.contains("tasks_performer_id_idx") || plan.contains("tasks_status_idx"), plan);
+    }
+
+    @Test
+    void filterByTitlePrefixUsesTitleIndex() {
+        TaskFilter filter = new TaskFilter(null, null, null, null, "Fix");
+        String plan = explain(filter, List.of("Fix%"));
+        assertTrue(plan.contains("tasks_title_idx"), plan);
+    }
+
+    // executes the filter to capture its SQL, then explains it with the same parameters
+    private String explain(TaskFilter filter, List<Object> criteria) {
+        SqlRecorder.clear();
+        taskRepository.findRows(TaskSpecifications.of(filter, 0L), LIMIT);
+        String sql = SqlRecorder.last();
+
+        List<Object> params = new ArrayList<>(criteria);
+        params.add(0L);
+        if (sql.chars().filter(ch -> ch == '?').count() > params.size()) {
+            params.add(LIMIT);
+        }
+        assertEquals(params.size(), sql.chars().filter(ch -> ch == '?').count(), sql);
+
+        return jdbcTemplate.queryForList("EXPLAIN " + sql, params.toArray()).stream()
+                .flatMap(row -> row.values().stream())
+                .map(String::valueOf)
+                .collect(Collectors.joining("\n"))
+                .toLowerCase();
+    }
+}
@@ -0,0 +1,119 @@
+package com.zolotarev.tms.service;
+
+import com.zolotarev.tms.dto.TaskRequest;
+import com.zolotarev.tms.dto.TaskUpdateRequest;
+import com.zolotarev.tms.dto.UserPrincipal;
+import com.zolotarev.tms.dto.UserResponse;
+import com.zolotarev.tms.entities.Task;
+import com.zolotarev.tms.entities.User;
+import com.zolotarev.tms.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Not transactional: the writes commit, so the evictions after the commit run. Another request reads
+// between the write and its commit; it sees the old rows and caches them, the commit must drop them again.
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.search.backend.directory.type=local-heap")
+public class CacheServiceTest {
+    @Autowired
+    private TaskService taskService;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private User author;
+    private User performer;
+    private Authentication auth;
+
+    @BeforeEach
+    void setUp() {
+        author = user("author");
+        performer = user("performer");
+        auth = new UsernamePasswordAuthenticationToken(
+                new UserPrincipal(author.getId(), author.getEmail(), author.getRole(), 0), null, List.of());
+    }
+
+    @AfterEach
+    void tearDown() {
+        for (User user : List.of(author, performer)) {
+            transactionTemplate.executeWithoutResult(status ->
+                    userRepository.delete(userRepository.findById(user.getId()).orElseThrow()));
+        }
+    }
+
+    @Test
+    void deletedTaskIsNotCachedByAReadBeforeTheCommit() throws Exception {
+        Long id = taskService.create(task(null), auth).getId();
+        taskService.findTaskById(id);
+
+        PlatformTransactionManager transactionManager = transactionTemplate.getTransactionManager();
+        TransactionStatus transaction = transactionManager.getTransaction(TransactionDefinition.withDefaults());
+        taskService.delete(id, auth);
+        assertEquals("cached", concurrently(() -> taskService.findTaskById(id).getTitle()));
+        transactionManager.commit(transaction);
+
+        assertThrows(NoSuchElementException.class, () -> taskService.findTaskById(id));
+    }
+
+    @Test
+    void batchAssignedTaskIsNotMissingFromACachedProfile() {
+        Long id = taskService.create(task(null), auth).getId();
+        assertEquals(List.of(), userService.getById(performer.getId()).getAsExecutor());
+
+        transactionTemplate.executeWithoutResult(status -> {
+            TaskUpdateRequest update = new TaskUpdateRequest();
+            update.setId(id);
+            update.setTask(task(performer.getId()));
+            assertTrue(taskService.updateBatch(List.of(update), auth).get(0).isSuccess());
+            assertEquals(List.of(), concurrently(() -> userService.getById(performer.getId())).getAsExecutor());
+        });
+
+        UserResponse profile = userService.getById(performer.getId());
+        assertEquals(List.of("id: " + id + ", title: cached"), profile.getAsExecutor());
+    }
+
+    // a request of another thread, outside of the open transaction
+    private static <T> T concurrently(Supplier<T> read) {
+        return CompletableFuture.supplyAsync(read).join();
+    }
+
+    private static TaskRequest task(Long performerId) {
+        TaskRequest request = new TaskRequest();
+        request.setTitle("cached");
+        request.setStatus(Task.TaskStatus.ON_HOLD);
+        request.setPriority(Task.TaskPriority.LOW);
+        request.setPerformerId(performerId);
+        return request;
+    }
+
+    private User user(String name) {
+        return userRepository.save(User.builder()
+                .firstName(name)
+                .lastName("Cache")
+                .email(name + System.nanoTime() + "@ya.ru")
+                .password("not used")
+                .role(User.Role.USER)
+                .build());
+    }
+}
@@ -0,0 +1,82 @@
+package com.zolotarev.tms.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zolotarev.tms.dto.TaskRow;
+import com.zolotarev.tms.entities.Task;
+import com.zolotarev.tms.repository.CommentRepository;
+import com.zolotarev.tms.repository.TaskRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+// Output formats of the exports, the rows come from a mocked cursor
+public class ExportServiceTest {
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private TaskRepository taskRepository;
+    private ExportService exportService;
+
+    @BeforeEach
+    void setUp() {
+        taskRepository = mock(TaskRepository.class);
+        exportService = new ExportService(taskRepository, mock(CommentRepository.class), objectMapper);
+    }
+
+    @Test
+    void emptyExportsWriteNothing() throws Exception {
+        for (ExportService.Format format : ExportService.Format.values()) {
+            when(taskRepository.streamRows()).thenReturn(Stream.empty());
+            assertEquals("", export(format), format.name());
+        }
+    }
+
+    @Test
+    void ndjsonIsOneObjectPerLine() throws Exception {
+        when(taskRepository.streamRows()).thenReturn(Stream.of(row(1L, "first", null), row(2L, "second\nline", 7L)));
+
+        String output = export(ExportService.Format.NDJSON);
+
+        assertTrue(output.endsWith("}\n"), output);
+        String[] lines = output.split("\n");
+        assertEquals(2, lines.length);
+        JsonNode first = objectMapper.readTree(lines[0]);
+        assertEquals(1, first.get("id").asLong());
+        assertTrue(first.get("performerId").isNull());
+        JsonNode second = objectMapper.readTree(lines[1]);
+        assertEquals("second\nline", second.get("title").asText());
+        assertEquals("IN_PROGRESS", second.get("status").asText());
+        assertEquals(7, second.get("performerId").asLong());
+    }
+
+    @Test
+    void csvQuotesValuesThatNeedIt() throws Exception {
+        when(taskRepository.streamRows()).thenReturn(Stream.of(
+                row(1L, "plain", null),
+                row(2L, "comma, \"quote\"", 7L),
+                row(3L, "two\nlines", null)));
+
+        String output = export(ExportService.Format.CSV);
+
+        assertEquals("id,title,description,status,priority,authorId,performerId,commentCount\n"
+                + "1,plain,,IN_PROGRESS,HIGH,5,,2\n"
+                + "2,\"comma, \"\"quote\"\"\",,IN_PROGRESS,HIGH,5,7,2\n"
+                + "3,\"two\nlines\",,IN_PROGRESS,HIGH,5,,2\n", output);
+    }
+
+    private String export(ExportService.Format format) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        exportService.exportTasks(format, out);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    private static TaskRow row(Long id, String title, Long performerId) {
+        return new TaskRow(id, title, null, Task.TaskStatus.IN_PROGRESS, Task.TaskPriority.HIGH,
+                5L, "Ivan", "Ivanov", performerId, null, null, 2);
+    }
+}
@@ -0,0 +1,169 @@
+package com.zolotarev.tms.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zolotarev.tms.dto.ImportReport;
+import com.zolotarev.tms.dto.UserPrincipal;
+import com.zolotarev.tms.entities.Task;
+import com.zolotarev.tms.entities.User;
+import com.zolotarev.tms.repository.TaskRepository;
+import com.zolotarev.tms.repository.UserRepository;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+// Parsing, validation and chunk commits of the import; repositories and transactions are mocked
+public class ImportServiceTest {
+    private static final long USER_ID = 1L;
+    private static final long OTHER_USER_ID = 2L;
+    private static final String HEADER = "title,description,status,priority,authorId,performerId\n";
+
+    private TaskRepository taskRepository;
+    private PlatformTransactionManager transactionManager;
+    private TaskChangeFeed taskChangeFeed;
+    private ImportService importService;
+    // tasks of every saveAll call, including the ones rolled back
+    private final List<List<Task>> saved = new ArrayList<>();
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        taskRepository = mock(TaskRepository.class);
+        when(taskRepository.saveAll(any())).thenAnswer(invocation -> {
+            List<Task> tasks = new ArrayList<>((Collection<Task>) invocation.getArgument(0));
+            saved.add(tasks);
+            return tasks;
+        });
+        UserRepository userRepository = mock(UserRepository.class);
+        when(userRepository.findExistingIds(any())).thenAnswer(invocation -> ((Collection<Long>) invocation
+                .getArgument(0)).stream().filter(Set.of(USER_ID, OTHER_USER_ID)::contains).toList());
+        when(userRepository.getReferenceById(anyLong())).thenAnswer(invocation -> {
+            User user = new User();
+            user.setId(invocation.getArgument(0));
+            return user;
+        });
+        transactionManager = mock(PlatformTransactionManager.class);
+        taskChangeFeed = mock(TaskChangeFeed.class);
+
+        importService = new ImportService(taskRepository, userRepository, new ObjectMapper(),
+                new TransactionTemplate(transactionManager), taskChangeFeed);
+        ReflectionTestUtils.setField(importService, "entityManager", mock(EntityManager.class));
+        ReflectionTestUtils.setField(importService, "chunkSize", 2);
+    }
+
+    @Test
+    void csvQuotedValuesMayContainSeparatorsAndLineBreaks() throws Exception {
+        ImportReport report = importCsv(HEADER
+                + "plain,,ON_HOLD,LOW,,\r\n"
+                + "\"comma, and \"\"quotes\"\"\",\"first line\nsecond line\",IN_PROGRESS,HIGH,,2\n"
+                + "\n"
+                + "last,no newline at the end,COMPLETED,MIDDLE,,");
+
+        assertEquals(3, report.getImported());
+        assertEquals(0, report.getRejected());
+        assertEquals(2, report.getChunks());
+        List<Task> tasks = saved.stream().flatMap(List::stream).toList();
+        assertEquals("plain", tasks.get(0).getTitle());
+        assertNull(tasks.get(0).getDescription());
+        assertNull(tasks.get(0).getPerformer());
+        assertEquals("comma, and \"quotes\"", tasks.get(1).getTitle());
+        assertEquals("first line\nsecond line", tasks.get(1).getDescription());
+        assertEquals(OTHER_USER_ID, tasks.get(1).getPerformer().getId());
+        assertEquals(Task.TaskPriority.MIDDLE, tasks.get(2).getPriority());
+        assertTrue(tasks.stream().allMatch(task -> task.getAuthor().getId() == USER_ID));
+        verify(taskChangeFeed).resyncAll();
+    }
+
+    @Test
+    void badRowsAreRejectedWithTheirLine() throws Exception {
+        ImportReport report = importCsv(HEADER
+                + "ok,\"two\nlines\",ON_HOLD,LOW,,\n"
+                + ",no title,ON_HOLD,LOW,,\n"
+                + "bad status,,DONE,LOW,,\n"
+                + "unknown performer,,ON_HOLD,LOW,,99\n"
+                + "other author,,ON_HOLD,LOW,2,\n"
+                + "bad id,,ON_HOLD,LOW,,x\n"
+                + "ok again,,ON_HOLD,LOW,,\n");
+
+        assertEquals(2, report.getImported());
+        assertEquals(5, report.getRejected());
+        // the quoted line break moves every following record one line down
+        assertEquals(List.of(4L, 5L, 6L, 7L, 8L),
+                report.getRejectedLines().stream().map(ImportReport.RejectedLine::getLine).toList());
+        assertEquals("title is required", report.getRejectedLines().get(0).getError());
+        assertEquals("status must be one of [ON_HOLD, IN_PROGRESS, COMPLETED]: DONE",
+                report.getRejectedLines().get(1).getError());
+        assertEquals("There is no User with Id: 99", report.getRejectedLines().get(2).getError());
+        assertEquals("Only ADMIN can import tasks of other authors", report.getRejectedLines().get(3).getError());
+        assertEquals("performerId is not a number: x", report.getRejectedLines().get(4).getError());
+    }
+
+    @Test
+    void ndjsonMalformedLineIsRejected() throws Exception {
+        ImportReport report = importTasks(ExportService.Format.NDJSON, USER_ID, User.Role.ADMIN,
+                "{\"title\":\"first\",\"status\":\"ON_HOLD\",\"priority\":\"LOW\",\"performerId\":null}\n"
+                        + "\n"
+                        + "{\"title\": broken\n"
+                        + "{\"title\":\"for other\",\"status\":\"ON_HOLD\",\"priority\":\"LOW\",\"authorId\":2}\n");
+
+        assertEquals(2, report.getImported());
+        assertEquals(1, report.getRejected());
+        assertEquals(3, report.getRejectedLines().get(0).getLine());
+        assertTrue(report.getRejectedLines().get(0).getError().startsWith("Malformed json"));
+        assertEquals(OTHER_USER_ID, saved.get(0).get(1).getAuthor().getId());
+    }
+
+    @Test
+    void failedChunkIsRolledBackAlone() throws Exception {
+        doReturn(List.of())
+                .doThrow(new DataIntegrityViolationException("ERROR: insert on table \"tasks\" violates fk_secret"))
+                .doReturn(List.of())
+                .when(taskRepository).saveAll(any());
+
+        ImportReport report = importCsv(HEADER
+                + "1,,ON_HOLD,LOW,,\n"
+                + "2,,ON_HOLD,LOW,,\n"
+                + "3,,ON_HOLD,LOW,,\n"
+                + "4,,ON_HOLD,LOW,,\n"
+                + "5,,ON_HOLD,LOW,,\n");
+
+        assertEquals(3, report.getImported());
+        assertEquals(2, report.getRejected());
+        assertEquals(3, report.getChunks());
+        assertEquals(List.of(4L, 5L),
+                report.getRejectedLines().stream().map(ImportReport.RejectedLine::getLine).toList());
+        // the database error is logged, not sent to the client
+        assertTrue(report.getRejectedLines().stream().noneMatch(line -> line.getError().contains("fk_secret")));
+        verify(transactionManager, times(2)).commit(any());
+        verify(transactionManager).rollback(any());
+    }
+
+    private ImportReport importCsv(String content) throws Exception {
+        return importTasks(ExportService.Format.CSV, USER_ID, User.Role.USER, content);
+    }
+
+    private ImportReport importTasks(ExportService.Format format, long userId, User.Role role, String content)
+            throws Exception {
+        Authentication auth = new UsernamePasswordAuthenticationToken(
+                new UserPrincipal(userId, "iv@ya.ru", role, 0), null, List.of());
+        return importService.importTasks(format,
+                new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)), auth);
+    }
+}
@@ -0,0 +1,138 @@
+package com.zolotarev.tms.service;
+
+import com.zolotarev.tms.dto.CommentRequest;
+import com.zolotarev.tms.dto.TaskRequest;
+import com.zolotarev.tms.dto.TaskSearchHit;
+import com.zolotarev.tms.dto.TaskSearchResponse;
+import com.zolotarev.tms.dto.UserPrincipal;
+import com.zolotarev.tms.entities.Comment;
+import com.zolotarev.tms.entities.Task;
+import com.zolotarev.tms.entities.User;
+import com.zolotarev.tms.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Not transactional: documents are indexed on commit and comment changes after it, so the data is committed
+// and deleted again. Every test searches for its own random word, other documents in the index don't match.
+// The index is in memory: the directory on disk is locked by the writer of any other test context.
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.search.backend.directory.type=local-heap")
+public class SearchServiceTest {
+    @Autowired
+    private SearchService searchService;
+
+    @Autowired
+    private TaskService taskService;
+
+    @Autowired
+    private CommentService commentService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private User user;
+    private Authentication auth;
+    private String word;
+
+    @BeforeEach
+    void setUp() {
+        user = userRepository.save(User.builder()
+                .firstName("Search")
+                .lastName("Test")
+                .email("search" + System.nanoTime() + "@ya.ru")
+                .password("not used")
+                .role(User.Role.USER)
+                .build());
+        auth = new UsernamePasswordAuthenticationToken(
+                new UserPrincipal(user.getId(), user.getEmail(), user.getRole(), 0), null, List.of());
+        word = "w" + UUID.randomUUID().toString().replace("-", "");
+    }
+
+    // the tasks and their comments are removed with the user, their documents are purged on commit
+    @AfterEach
+    void tearDown() {
+        transactionTemplate.executeWithoutResult(status ->
+                userRepository.delete(userRepository.findById(user.getId()).orElseThrow()));
+    }
+
+    @Test
+    void titleRanksAboveDescriptionAndComments() throws Exception {
+        Task inDescription = taskService.create(task("second", word + " in the description"), auth);
+        Task inTitle = taskService.create(task(word + " first", null), auth);
+        Task inComment = taskService.create(task("third", null), auth);
+        Comment comment = commentService.create(comment(inComment.getId(), "see " + word), auth);
+
+        // the comment reaches the index after its commit, on the search executor
+        TaskSearchResponse response = await(word, r -> r.getTotal() == 3);
+        assertEquals(inTitle.getId(), response.getItems().get(0).id());
+        assertEquals(word + " first", response.getItems().get(0).title());
+        assertEquals(Set.of(inDescription.getId(), inComment.getId()),
+                Set.of(response.getItems().get(1).id(), response.getItems().get(2).id()));
+        assertTrue(response.getItems().get(0).score() > response.getItems().get(1).score());
+
+        CommentRequest changed = comment(inComment.getId(), "nothing to find");
+        commentService.update(comment.getId(), changed, auth);
+        response = await(word, r -> r.getTotal() == 2);
+        assertTrue(response.getItems().stream().noneMatch(hit -> hit.id().equals(inComment.getId())));
+    }
+
+    @Test
+    void pagesDontOverlap() throws Exception {
+        Set<Long> ids = new HashSet<>();
+        for (int i = 0; i < 5; i++) {
+            ids.add(taskService.create(task(word + " " + i, null), auth).getId());
+        }
+
+        Set<Long> found = new HashSet<>();
+        for (int page = 0; page < 3; page++) {
+            TaskSearchResponse response = searchService.search(word, page, 2);
+            assertEquals(5, response.getTotal());
+            assertEquals(page < 2 ? 2 : 1, response.getItems().size());
+            response.getItems().stream().map(TaskSearchHit::id).forEach(found::add);
+        }
+        assertEquals(ids, found);
+        assertTrue(searchService.search(word, 3, 2).getItems().isEmpty());
+    }
+
+    private TaskSearchResponse await(String query, Predicate<TaskSearchResponse> condition) throws Exception {
+        TaskSearchResponse response = searchService.search(query, 0, 10);
+        for (int i = 0; i < 100 && !condition.test(response); i++) {
+            Thread.sleep(50);
+            response = searchService.search(query, 0, 10);
+        }
+        assertTrue(condition.test(response), response.toString());
+        return response;
+    }
+
+    private static TaskRequest task(String title, String description) {
+        TaskRequest request = new TaskRequest();
+        request.setTitle(title);
+        request.setDescription(description);
+        request.setStatus(Task.TaskStatus.ON_HOLD);
+        request.setPriority(Task.TaskPriority.LOW);
+        return request;
+    }
+
+    private static CommentRequest comment(Long taskId, String text) {
+        CommentRequest request = new CommentRequest();
+        request.setTaskId(taskId);
+        request.setText(text);
+        return request;
+    }
+}
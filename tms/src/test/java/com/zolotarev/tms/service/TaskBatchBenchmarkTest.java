@@ -0,0 +1,75 @@
+package com.zolotarev.tms.service;
+
+import com.zolotarev.tms.dto.BatchItemResult;
+import com.zolotarev.tms.dto.TaskRequest;
+import com.zolotarev.tms.dto.UserPrincipal;
+import com.zolotarev.tms.entities.Task;
+import com.zolotarev.tms.entities.User;
+import com.zolotarev.tms.repository.UserRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Run with: mvn test -Dtest=TaskBatchBenchmarkTest -Dbenchmark=true [-Dbenchmark.rows=5000]
+@Slf4j
+@SpringBootTest
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public class TaskBatchBenchmarkTest {
+    @Autowired
+    private TaskService taskService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Test
+    void batchVersusSingleInsert() {
+        int rows = Integer.getInteger("benchmark.rows", 2000);
+        User user = userRepository.save(User.builder()
+                .firstName("Bench")
+                .lastName("Mark")
+                .email("bench" + System.nanoTime() + "@ya.ru")
+                .password("not used")
+                .role(User.Role.USER)
+                .build());
+        Authentication auth = new UsernamePasswordAuthenticationToken(
+                new UserPrincipal(user.getId(), user.getEmail(), user.getRole(), 0), null, List.of());
+
+        long start = System.nanoTime();
+        for (int i = 0; i < rows; i++) {
+            taskService.create(request(i), auth);
+        }
+        double single = rows / ((System.nanoTime() - start) / 1e9);
+
+        start = System.nanoTime();
+        for (int from = 0; from < rows; from += 500) {
+            List<TaskRequest> batch = new ArrayList<>();
+            for (int i = from; i < Math.min(from + 500, rows); i++) {
+                batch.add(request(i));
+            }
+            List<BatchItemResult> results = taskService.createBatch(batch, auth);
+            assertTrue(results.stream().allMatch(BatchItemResult::isSuccess));
+        }
+        double batched = rows / ((System.nanoTime() - start) / 1e9);
+
+        log.info("Task inserts, {} rows: single {} rows/s, batch {} rows/s (x{})",
+                rows, Math.round(single), Math.round(batched), String.format("%.1f", batched / single));
+    }
+
+    private static TaskRequest request(int i) {
+        TaskRequest request = new TaskRequest();
+        request.setTitle("bench task " + i);
+        request.setDescription("generated by TaskBatchBenchmarkTest");
+        request.setStatus(Task.TaskStatus.ON_HOLD);
+        request.setPriority(Task.TaskPriority.MIDDLE);
+        return request;
+    }
+}
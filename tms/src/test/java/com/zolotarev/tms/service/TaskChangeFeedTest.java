@@ -0,0 +1,130 @@
+package com.zolotarev.tms.service;
+
+import com.zolotarev.tms.dto.TaskChangeEvent;
+import com.zolotarev.tms.dto.TaskStreamFilter;
+import com.zolotarev.tms.entities.Task;
+import com.zolotarev.tms.repository.CommentRepository;
+import com.zolotarev.tms.repository.TaskRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+// Writers of the task streams with emitters that record or block their writes, without a servlet container
+public class TaskChangeFeedTest {
+    private static final Duration SEND_TIMEOUT = Duration.ofMillis(200);
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private ThreadPoolTaskExecutor feedExecutor;
+    private ThreadPoolTaskExecutor streamExecutor;
+    private TaskChangeFeed feed;
+
+    @BeforeEach
+    void setUp() {
+        feedExecutor = executor(1);
+        // a single writer: a blocked write would hold every stream
+        streamExecutor = executor(1);
+        feed = new TaskChangeFeed(mock(TaskRepository.class), mock(CommentRepository.class),
+                new TransactionTemplate(mock(PlatformTransactionManager.class)), feedExecutor, streamExecutor,
+                meterRegistry);
+        ReflectionTestUtils.setField(feed, "bufferSize", 16);
+        ReflectionTestUtils.setField(feed, "queueSize", 100);
+        ReflectionTestUtils.setField(feed, "maxSubscribers", 10);
+        ReflectionTestUtils.setField(feed, "timeout", Duration.ofMinutes(1));
+        ReflectionTestUtils.setField(feed, "sendTimeout", SEND_TIMEOUT);
+        ReflectionTestUtils.setField(feed, "maxStalled", 4);
+        feed.registerMeters();
+    }
+
+    @AfterEach
+    void tearDown() {
+        feedExecutor.shutdown();
+        streamExecutor.shutdown();
+    }
+
+    @Test
+    void stalledSubscriberIsDroppedAndOthersKeepReceiving() throws Exception {
+        BlockingEmitter stalled = new BlockingEmitter();
+        RecordingEmitter healthy = new RecordingEmitter();
+        feed.subscribe(new TaskStreamFilter(), null, stalled);
+        assertTrue(stalled.writing.await(5, TimeUnit.SECONDS));
+        feed.subscribe(new TaskStreamFilter(), null, healthy);
+
+        // the only writer is blocked on the first heartbeat, the second stream waits behind it
+        Thread.sleep(SEND_TIMEOUT.toMillis() * 2);
+        assertNull(healthy.sent.poll());
+        feed.dropStalled();
+
+        assertEquals(1, meterRegistry.get("tms.stream.stalled").counter().count());
+        assertEquals(1, meterRegistry.get("tms.stream.subscribers").gauge().value());
+        assertEquals(2, streamExecutor.getCorePoolSize());
+        assertNotNull(healthy.sent.poll(5, TimeUnit.SECONDS), "heartbeat");
+        feed.emit(List.of(new TaskChangeEvent(0, TaskChangeEvent.Type.TASK_UPDATED, 1L, null, 1L, null,
+                Task.TaskStatus.ON_HOLD, true, false, false)));
+        assertNotNull(healthy.sent.poll(5, TimeUnit.SECONDS), "event");
+
+        // the container fails the blocked write at last: the emitter is completed, the extra writer goes away
+        stalled.release.countDown();
+        assertTrue(stalled.completed.await(5, TimeUnit.SECONDS));
+        assertEquals(1, streamExecutor.getCorePoolSize());
+        assertEquals(1, stalled.writes);
+    }
+
+    private static ThreadPoolTaskExecutor executor(int threads) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.initialize();
+        return executor;
+    }
+
+    private static class RecordingEmitter extends SseEmitter {
+        final LinkedBlockingQueue<SseEventBuilder> sent = new LinkedBlockingQueue<>();
+
+        @Override
+        public void send(SseEventBuilder builder) {
+            sent.add(builder);
+        }
+    }
+
+    // a client that doesn't read: the write doesn't return until released
+    private static class BlockingEmitter extends SseEmitter {
+        final CountDownLatch writing = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch completed = new CountDownLatch(1);
+        volatile int writes;
+
+        @Override
+        public void send(SseEventBuilder builder) throws IOException {
+            writes++;
+            writing.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            throw new IOException("Write timed out");
+        }
+
+        @Override
+        public synchronized void complete() {
+            super.complete();
+            completed.countDown();
+        }
+    }
+}
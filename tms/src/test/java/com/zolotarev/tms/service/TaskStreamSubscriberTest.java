@@ -0,0 +1,74 @@
+package com.zolotarev.tms.service;
+
+import com.zolotarev.tms.dto.TaskChangeEvent;
+import com.zolotarev.tms.dto.TaskStreamFilter;
+import com.zolotarev.tms.entities.Task;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Buffer of one /tasks/stream subscriber and its filter, without a connection
+public class TaskStreamSubscriberTest {
+    private static final int CAPACITY = 3;
+
+    @Test
+    void fullBufferIsReplacedByResync() {
+        AtomicInteger overflows = new AtomicInteger();
+        TaskStreamSubscriber subscriber = new TaskStreamSubscriber(new TaskStreamFilter(), null, CAPACITY,
+                overflows::incrementAndGet);
+
+        // only the first offer finds the subscriber idle
+        assertTrue(subscriber.offer(event(1, 10L, Task.TaskStatus.ON_HOLD)));
+        for (long id = 2; id <= CAPACITY; id++) {
+            assertFalse(subscriber.offer(event(id, 10L, Task.TaskStatus.ON_HOLD)));
+        }
+        TaskStreamSubscriber.Batch batch = subscriber.poll();
+        assertFalse(batch.resync());
+        assertEquals(CAPACITY, batch.events().size());
+
+        // the consumer falls behind: everything buffered is dropped, nothing is buffered until the resync is sent
+        for (long id = 1; id <= CAPACITY + 2; id++) {
+            subscriber.offer(event(id, 10L, Task.TaskStatus.ON_HOLD));
+        }
+        batch = subscriber.poll();
+        assertTrue(batch.resync());
+        assertTrue(batch.events().isEmpty());
+        assertEquals(1, overflows.get());
+
+        subscriber.offer(event(100, 10L, Task.TaskStatus.ON_HOLD));
+        batch = subscriber.poll();
+        assertFalse(batch.resync());
+        assertEquals(100, batch.events().get(0).getId());
+
+        // drained: the sender stops, the next offer schedules a new one
+        assertNull(subscriber.poll());
+        assertTrue(subscriber.offer(event(101, 10L, Task.TaskStatus.ON_HOLD)));
+    }
+
+    @Test
+    void filterPassesUnknownAndMovedTasks() {
+        TaskStreamFilter byPerformer = new TaskStreamFilter(null, 10L, null);
+        assertTrue(byPerformer.matches(event(1, 10L, Task.TaskStatus.ON_HOLD)));
+        assertFalse(byPerformer.matches(event(2, 20L, Task.TaskStatus.ON_HOLD)));
+
+        // reassigned, the previous performer may have been 10
+        TaskChangeEvent reassigned = event(3, 20L, Task.TaskStatus.ON_HOLD);
+        reassigned.setPerformerChanged(true);
+        assertTrue(byPerformer.matches(reassigned));
+
+        // deleted task, only the author is known
+        TaskChangeEvent deleted = TaskChangeEvent.ofTask(TaskChangeEvent.Type.TASK_DELETED, 4L, 1L);
+        assertTrue(byPerformer.matches(deleted));
+        assertFalse(new TaskStreamFilter(2L, null, null).matches(deleted));
+
+        TaskStreamFilter byStatus = new TaskStreamFilter(null, null, Task.TaskStatus.COMPLETED);
+        assertFalse(byStatus.matches(event(5, 10L, Task.TaskStatus.ON_HOLD)));
+    }
+
+    private static TaskChangeEvent event(long id, Long performerId, Task.TaskStatus status) {
+        return new TaskChangeEvent(id, TaskChangeEvent.Type.TASK_UPDATED, id, null, 1L, performerId, status,
+                true, false, false);
+    }
+}
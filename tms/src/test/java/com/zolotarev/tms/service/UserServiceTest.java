@@ -0,0 +1,158 @@
+package com.zolotarev.tms.service;
+
+import com.zolotarev.tms.dto.TaskRequest;
+import com.zolotarev.tms.dto.UserPrincipal;
+import com.zolotarev.tms.dto.UserResponse;
+import com.zolotarev.tms.entities.Comment;
+import com.zolotarev.tms.entities.Task;
+import com.zolotarev.tms.entities.User;
+import com.zolotarev.tms.repository.CommentRepository;
+import com.zolotarev.tms.repository.TaskRepository;
+import com.zolotarev.tms.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Not transactional: the sections are read by the profile executor in transactions of their own,
+// they only see committed rows. The rows are deleted with the users. The created task is indexed
+// in memory: the index directory on disk is locked by the writer of any other test context.
+@SpringBootTest(properties = {"application.profile.timeout=1s",
+        "spring.jpa.properties.hibernate.search.backend.directory.type=local-heap"})
+public class UserServiceTest {
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private TaskService taskService;
+
+    @Autowired
+    private TaskRepository taskRepository;
+
+    @Autowired
+    private CommentRepository commentRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private DataSource dataSource;
+
+    private User author;
+    private User performer;
+    private Task task;
+    private Comment comment;
+
+    @BeforeEach
+    void setUp() {
+        author = user("author");
+        performer = user("performer");
+        TaskRequest request = new TaskRequest();
+        request.setTitle("profile task");
+        request.setStatus(Task.TaskStatus.ON_HOLD);
+        request.setPriority(Task.TaskPriority.LOW);
+        request.setPerformerId(performer.getId());
+        task = taskService.create(request, auth(author));
+        // saved directly: CommentService would queue a search reindex, another reader of the locked table
+        comment = transactionTemplate.execute(status -> {
+            Comment entity = new Comment();
+            entity.setTask(taskRepository.getReferenceById(task.getId()));
+            entity.setAuthor(userRepository.getReferenceById(author.getId()));
+            entity.setText("profile comment");
+            return commentRepository.save(entity);
+        });
+    }
+
+    // the author's tasks and comments go with the author
+    @AfterEach
+    void tearDown() {
+        for (User user : List.of(author, performer)) {
+            transactionTemplate.executeWithoutResult(status ->
+                    userRepository.delete(userRepository.findById(user.getId()).orElseThrow()));
+        }
+    }
+
+    @Test
+    void sectionsListTasksAndComments() {
+        UserResponse asAuthor = userService.getById(author.getId());
+        assertTrue(asAuthor.getUnavailable().isEmpty());
+        assertEquals(List.of("id: " + task.getId() + ", title: profile task"), asAuthor.getAsAuthor());
+        assertEquals(List.of(), asAuthor.getAsExecutor());
+        assertEquals(List.of("id: " + comment.getId() + ", to task: " + task.getId()), asAuthor.getComments());
+        assertNotNull(asAuthor.getEtag());
+
+        UserResponse asPerformer = userService.getById(performer.getId());
+        assertEquals(List.of("id: " + task.getId() + ", title: profile task"), asPerformer.getAsExecutor());
+        assertEquals(List.of(), asPerformer.getComments());
+    }
+
+    @Test
+    void lateSectionIsCancelledAndReportedUnavailable() throws Exception {
+        try (Connection lock = dataSource.getConnection()) {
+            lock.setAutoCommit(false);
+            try (Statement statement = lock.createStatement()) {
+                // the comments section waits for this lock
+                statement.execute("LOCK TABLE comments IN ACCESS EXCLUSIVE MODE");
+
+                UserResponse response = userService.getById(author.getId());
+
+                assertEquals(List.of("comments"), response.getUnavailable());
+                assertNull(response.getComments());
+                assertEquals(List.of("id: " + task.getId() + ", title: profile task"), response.getAsAuthor());
+                assertNull(response.getEtag());
+                // the timed out query doesn't wait for the lock any more, its connection is free again
+                assertEquals(0, waitingForLock(statement));
+            } finally {
+                lock.rollback();
+            }
+        }
+        // a degraded response isn't cached
+        assertTrue(userService.getById(author.getId()).getUnavailable().isEmpty());
+    }
+
+    private static long waitingForLock(Statement statement) throws Exception {
+        long waiting = 0;
+        for (int i = 0; i < 50; i++) {
+            try (ResultSet rs = statement.executeQuery(
+                    "SELECT count(*) FROM pg_locks WHERE NOT granted AND relation = 'comments'::regclass")) {
+                rs.next();
+                waiting = rs.getLong(1);
+            }
+            if (waiting == 0) {
+                break;
+            }
+            Thread.sleep(100);
+        }
+        return waiting;
+    }
+
+    private User user(String name) {
+        return userRepository.save(User.builder()
+                .firstName(name)
+                .lastName("Profile")
+                .email(name + System.nanoTime() + "@ya.ru")
+                .password("not used")
+                .role(User.Role.USER)
+                .build());
+    }
+
+    private static Authentication auth(User user) {
+        return new UsernamePasswordAuthenticationToken(
+                new UserPrincipal(user.getId(), user.getEmail(), user.getRole(), 0), null, List.of());
+    }
+}